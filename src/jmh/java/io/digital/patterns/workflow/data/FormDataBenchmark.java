@@ -0,0 +1,60 @@
+package io.digital.patterns.workflow.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Measures the steps run for every form variable written: finding the forms, building their S3 key
+ * and writing the stringified form indexed in Elasticsearch.
+ */
+@State(Scope.Benchmark)
+public class FormDataBenchmark {
+
+    @Param
+    private FormPayloads payload;
+
+    private final FormObjectSplitter splitter = new FormObjectSplitter();
+    private final FormDataStringifier stringifier = new FormDataStringifier();
+
+    private String json;
+    private byte[] bytes;
+    private List<FormObject> forms;
+
+    @Setup
+    public void setUp() {
+        json = payload.json();
+        bytes = payload.bytes();
+        forms = splitter.split(bytes);
+    }
+
+    @Benchmark
+    public List<FormObject> splitString() {
+        return splitter.split(json);
+    }
+
+    @Benchmark
+    public List<FormObject> splitBytes() {
+        return splitter.split(bytes);
+    }
+
+    @Benchmark
+    public void key(Blackhole blackhole) {
+        for (FormObject form : forms) {
+            blackhole.consume(FormDataService.key("BF-20200120-000", form.getName(),
+                    form.getSubmittedBy(), form.getSubmissionDate()));
+        }
+    }
+
+    @Benchmark
+    public void stringify(Blackhole blackhole) {
+        for (FormObject form : forms) {
+            blackhole.consume(stringifier.stringify(form));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.digital.patterns.workflow.data;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates variables shaped like the ones written by the forms: a root with a business key,
+ * forms directly under the root and forms in an array, each with a 'form' object and its fields.
+ */
+public enum FormPayloads {
+
+    /**
+     * One form with a handful of fields.
+     */
+    SMALL(1, 0, 10),
+    /**
+     * A case with several forms and a repeating section.
+     */
+    MEDIUM(8, 4, 60),
+    /**
+     * A case with many large forms, a few megabytes in total.
+     */
+    HUGE(40, 20, 600);
+
+    private final int forms;
+    private final int formsInArray;
+    private final int fieldsPerForm;
+
+    FormPayloads(int forms, int formsInArray, int fieldsPerForm) {
+        this.forms = forms;
+        this.formsInArray = formsInArray;
+        this.fieldsPerForm = fieldsPerForm;
+    }
+
+    public String json() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"businessKey\":\"BF-20200120-000\",");
+        for (int i = 0; i < forms; i++) {
+            json.append("\"form").append(i).append("\":");
+            form(json, i);
+            json.append(',');
+        }
+        json.append("\"items\":[");
+        for (int i = 0; i < formsInArray; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            form(json, forms + i);
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    public byte[] bytes() {
+        return json().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void form(StringBuilder json, int index) {
+        json.append("{\"form\":{")
+                .append("\"name\":\"form").append(index).append("\",")
+                .append("\"title\":\"Form ").append(index).append("\",")
+                .append("\"formVersionId\":\"").append(index).append("-version\",")
+                .append("\"submittedBy\":\"officer").append(index).append("@example.com\",")
+                .append("\"submissionDate\":\"2020-01-20T12:15:21.000Z\",")
+                .append("\"process\":{}},");
+        for (int field = 0; field < fieldsPerForm; field++) {
+            json.append("\"field").append(field).append("\":");
+            switch (field % 6) {
+                case 0:
+                    json.append("\"A free text answer given for field ").append(field).append("\"");
+                    break;
+                case 1:
+                    json.append(field * 31);
+                    break;
+                case 2:
+                    json.append(field % 2 == 0);
+                    break;
+                case 3:
+                    json.append("null");
+                    break;
+                case 4:
+                    json.append("[\"first\",\"second\",[1,2,3]]");
+                    break;
+                default:
+                    json.append("{\"line1\":\"1 High Street\",\"town\":\"London\",\"postcode\":\"SW1A 1AA\"}");
+            }
+            json.append(',');
+        }
+        json.append("\"submit\":true}");
+    }
+}
@@ -0,0 +1,75 @@
+package io.digital.patterns.workflow.encrypt;
+
+import io.digital.patterns.workflow.data.FormPayloads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.lang3.SerializationUtils;
+import org.camunda.bpm.engine.rest.dto.VariableValueDto;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.type.ValueType;
+import org.camunda.spin.Spin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.crypto.SealedObject;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.camunda.bpm.engine.variable.type.SerializableValueType.VALUE_INFO_OBJECT_TYPE_NAME;
+import static org.camunda.bpm.engine.variable.type.SerializableValueType.VALUE_INFO_SERIALIZATION_DATA_FORMAT;
+
+/**
+ * Measures decrypting an encrypted variable returned by the REST API, either as the serialized
+ * value or as the deserialized object when values are deserialized, for variables stored as a
+ * sealed object and as an envelope.
+ */
+@State(Scope.Benchmark)
+public class DecryptBenchmark {
+
+    @Param
+    private FormPayloads payload;
+
+    @Param({"false", "true"})
+    private boolean deserializeValues;
+
+    @Param({"false", "true"})
+    private boolean envelope;
+
+    private SealedObjectVariableCipher decryptor;
+    private EnvelopeCipher envelopeCipher;
+    private final EncryptionMetrics encryptionMetrics = new EncryptionMetrics(new SimpleMeterRegistry());
+    private Object value;
+    private Map<String, Object> valueInfo;
+
+    @Setup
+    public void setUp() {
+        decryptor = new SealedObjectVariableCipher("test", "test");
+        envelopeCipher = new EnvelopeCipher("v1", "test", "test", true);
+        if (envelope) {
+            VariableEnvelope encrypted = envelopeCipher.encrypt(payload.json());
+            value = deserializeValues ? encrypted : Base64.getEncoder().encodeToString(encrypted.toBytes());
+            valueInfo = Map.of(
+                    VALUE_INFO_OBJECT_TYPE_NAME, VariableEnvelope.class.getName(),
+                    VALUE_INFO_SERIALIZATION_DATA_FORMAT, VariableEnvelopeSerializer.DATA_FORMAT);
+        } else {
+            SealedObject sealed = decryptor.encrypt(Spin.JSON(payload.json()));
+            value = deserializeValues ? sealed
+                    : Base64.getEncoder().encodeToString(SerializationUtils.serialize(sealed));
+            valueInfo = Map.of(
+                    VALUE_INFO_OBJECT_TYPE_NAME, SealedObject.class.getName(),
+                    VALUE_INFO_SERIALIZATION_DATA_FORMAT, Variables.SerializationDataFormats.JAVA.getName());
+        }
+    }
+
+    @Benchmark
+    public VariableValueDto decrypt() {
+        VariableValueDto dto = new VariableValueDto();
+        dto.setValue(value);
+        dto.setType(ValueType.OBJECT.getName());
+        dto.setValueInfo(valueInfo);
+        VariablesDecryptInterceptor.decrypt(dto, decryptor, envelopeCipher, encryptionMetrics, deserializeValues);
+        return dto;
+    }
+}
@@ -3,10 +3,17 @@ package io.digital.patterns.workflow;
 import com.amazonaws.services.s3.AmazonS3;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.digital.patterns.workflow.aws.AwsProperties;
+import io.digital.patterns.workflow.data.FormDataIndexer;
+import io.digital.patterns.workflow.data.FormDataOutbox;
+import io.digital.patterns.workflow.data.FormDataOutboxDispatcher;
+import io.digital.patterns.workflow.data.FormDataProperties;
 import io.digital.patterns.workflow.data.FormDataService;
 import io.digital.patterns.workflow.data.FormDataVariablePersistListener;
 import io.digital.patterns.workflow.data.FormObjectSplitter;
+import io.digital.patterns.workflow.data.FormSubmissionRepository;
+import io.digital.patterns.workflow.data.ProductBucketResolver;
 import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.ProcessEngine;
 import org.camunda.bpm.engine.impl.cfg.ProcessEnginePlugin;
 import org.camunda.bpm.engine.impl.history.handler.CompositeDbHistoryEventHandler;
 import org.camunda.bpm.engine.spring.SpringProcessEngineConfiguration;
@@ -14,11 +21,11 @@ import org.camunda.bpm.spring.boot.starter.configuration.impl.AbstractCamundaCon
 import org.camunda.connect.plugin.impl.ConnectProcessEnginePlugin;
 import org.camunda.spin.impl.json.jackson.format.JacksonJsonDataFormat;
 import org.camunda.spin.plugin.impl.SpinProcessEnginePlugin;
-import org.elasticsearch.client.RestHighLevelClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.retry.support.RetryTemplate;
+
+import javax.annotation.PreDestroy;
 
 @Slf4j
 @Configuration
@@ -47,38 +54,63 @@ public class CamundaConfiguration {
         private final String bucketNamePrefix;
         private final AmazonS3 amazonS3;
         private final AwsProperties awsProperties;
-        private final RestHighLevelClient elasticsearchClient;
-        private final RetryTemplate retryTemplate;
+        private final FormDataIndexer formDataIndexer;
+        private final FormSubmissionRepository formSubmissionRepository;
+        private final FormDataOutbox formDataOutbox;
+        private final FormDataProperties formDataProperties;
+        private FormDataService formDataService;
+        private FormDataOutboxDispatcher formDataOutboxDispatcher;
 
         public S3VariablePersistenceConfiguration(AmazonS3 amazonS3, AwsProperties awsProperties,
-                                                  RestHighLevelClient elasticsearchClient,
-                                                  RetryTemplate retryTemplate,
+                                                  FormDataIndexer formDataIndexer,
+                                                  FormSubmissionRepository formSubmissionRepository,
+                                                  FormDataOutbox formDataOutbox,
+                                                  FormDataProperties formDataProperties,
                                                   @Value("${aws.bucket-name-prefix:}")
                                                   String bucketNamePrefix) {
             this.bucketNamePrefix = bucketNamePrefix;
             this.amazonS3 = amazonS3;
             this.awsProperties = awsProperties;
-            this.elasticsearchClient = elasticsearchClient;
-            this.retryTemplate = retryTemplate;
+            this.formDataIndexer = formDataIndexer;
+            this.formSubmissionRepository = formSubmissionRepository;
+            this.formDataOutbox = formDataOutbox;
+            this.formDataProperties = formDataProperties;
         }
 
 
         @Override
         public void preInit(SpringProcessEngineConfiguration processEngineConfiguration) {
             processEngineConfiguration.setJavaSerializationFormatEnabled(true);
+            formDataService = new FormDataService(
+                    amazonS3, formDataIndexer, formSubmissionRepository, formDataProperties.getUpload());
+            formDataOutboxDispatcher = new FormDataOutboxDispatcher(
+                    formDataOutbox,
+                    formDataProperties.getOutbox(),
+                    processEngineConfiguration.getHistoryService(),
+                    processEngineConfiguration.getRuntimeService(),
+                    new FormObjectSplitter(),
+                    new ProductBucketResolver(bucketNamePrefix, awsProperties,
+                            processEngineConfiguration.getRepositoryService()),
+                    formDataService);
             processEngineConfiguration.setHistoryEventHandler(
                     new CompositeDbHistoryEventHandler(
-                            new FormDataVariablePersistListener(
-                                    bucketNamePrefix,
-                                    awsProperties,
-                                    new FormDataService(processEngineConfiguration.getRuntimeService(),
-                                            amazonS3, elasticsearchClient),
-                                    processEngineConfiguration.getRepositoryService(),
-                                    processEngineConfiguration.getHistoryService(),
-                                    new FormObjectSplitter(),
-                                    retryTemplate
-                            )));
+                            new FormDataVariablePersistListener(formDataOutbox, formDataOutboxDispatcher)));
             log.info("S3 variable persistence configured");
         }
+
+        @Override
+        public void postProcessEngineBuild(ProcessEngine processEngine) {
+            formDataOutboxDispatcher.start();
+        }
+
+        @PreDestroy
+        public void stopFormDataPersistence() {
+            if (formDataOutboxDispatcher != null) {
+                formDataOutboxDispatcher.stop();
+            }
+            if (formDataService != null) {
+                formDataService.shutdown();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package io.digital.patterns.workflow.aws;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily iterates over every object under a prefix. Pages are requested with ListObjectsV2 one at a time
+ * as the iteration reaches them, following continuation tokens, so listings larger than 1000 objects
+ * are read in full without holding more than one page in memory.
+ */
+public class PagedObjectListing implements Iterable<S3ObjectSummary> {
+
+    private final AmazonS3 amazonS3;
+    private final String bucketName;
+    private final String prefix;
+
+    public PagedObjectListing(AmazonS3 amazonS3, String bucketName, String prefix) {
+        this.amazonS3 = amazonS3;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Iterator<S3ObjectSummary> iterator() {
+        return new Iterator<>() {
+            private ListObjectsV2Result page;
+            private Iterator<S3ObjectSummary> summaries = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!summaries.hasNext() && (page == null || page.isTruncated())) {
+                    ListObjectsV2Request request = new ListObjectsV2Request()
+                            .withBucketName(bucketName)
+                            .withPrefix(prefix);
+                    if (page != null) {
+                        request.setContinuationToken(page.getNextContinuationToken());
+                    }
+                    page = amazonS3.listObjectsV2(request);
+                    summaries = page.getObjectSummaries().iterator();
+                }
+                return summaries.hasNext();
+            }
+
+            @Override
+            public S3ObjectSummary next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return summaries.next();
+            }
+        };
+    }
+
+    public Stream<S3ObjectSummary> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+}
@@ -14,6 +14,9 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -27,6 +30,8 @@ import java.util.List;
 @RestController
 public class CaseApiController {
 
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
     private CasesApplicationService casesApplicationService;
     private PagedResourcesAssembler<Case> pagedResourcesAssembler;
 
@@ -65,5 +70,16 @@ public class CaseApiController {
         return ResponseEntity.ok(submissionData.toString());
     }
 
+    @GetMapping(path = "/{businessKey}/submissions", produces = NDJSON_VALUE)
+    public void getSubmissions(@PathVariable String businessKey,
+                               HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        casesApplicationService.writeSubmissionData(businessKey, response.getOutputStream(),
+                new PlatformUser(
+                        (JwtAuthenticationToken) SecurityContextHolder.getContext().getAuthentication()
+                ));
+    }
+
 
 }
@@ -23,7 +23,20 @@ public class CaseAuthorizationEvaluator {
     }
 
     /**
-     * Determine if the submission data is viewable by the user
+     * Determine if user is allowed to view the submission data of a case before it is streamed. Each
+     * submission streamed is also checked with {@link #isAuthorized(SpinJsonNode, PlatformUser)}
+     *
+     * @param businessKey
+     * @param platformUser
+     * @return true/false
+     */
+    public boolean isAuthorized(String businessKey, PlatformUser platformUser) {
+        return true;
+    }
+
+    /**
+     * Determine if the submission data is viewable by the user, for a single submission and for each
+     * submission of a case that is streamed
      *
      * @param data
      * @param platformUser
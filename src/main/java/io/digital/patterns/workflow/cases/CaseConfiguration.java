@@ -0,0 +1,49 @@
+package io.digital.patterns.workflow.cases;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class CaseConfiguration {
+
+    /**
+     * Dedicated pool for the remote calls made while building case details so that a slow S3
+     * does not starve the request threads. When the queue is full the caller runs the task itself.
+     *
+     * @param caseProperties
+     * @return bounded executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService caseDetailExecutor(CaseProperties caseProperties) {
+        CaseProperties.Executor executor = caseProperties.getExecutor();
+        return new ThreadPoolExecutor(executor.getPoolSize(), executor.getPoolSize(),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(executor.getQueueCapacity()),
+                new CustomizableThreadFactory("case-detail-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Pool for the HEAD requests that load form metadata, kept apart from the case detail pool that
+     * runs the sections waiting on them. Requests that do not fit are rejected rather than run by the
+     * caller, so that the fan-out of a case stays within its deadline.
+     *
+     * @param caseProperties
+     * @return bounded executor
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService formMetadataExecutor(CaseProperties caseProperties) {
+        CaseProperties.FormMetadata formMetadata = caseProperties.getFormMetadata();
+        return new ThreadPoolExecutor(formMetadata.getPoolSize(), formMetadata.getPoolSize(),
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(formMetadata.getQueueCapacity()),
+                new CustomizableThreadFactory("form-metadata-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
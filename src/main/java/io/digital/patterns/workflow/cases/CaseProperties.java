@@ -0,0 +1,56 @@
+package io.digital.patterns.workflow.cases;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "cases")
+@Component
+@Data
+public class CaseProperties {
+
+    private Executor executor = new Executor();
+    private FormMetadata formMetadata = new FormMetadata();
+    private FormIndex formIndex = new FormIndex();
+    private Detail detail = new Detail();
+
+
+    @Data
+    public static class Executor {
+        private int poolSize = 20;
+        private int queueCapacity = 500;
+    }
+
+    @Data
+    public static class FormMetadata {
+        private int concurrency = 10;
+        private Duration timeout = Duration.ofSeconds(10);
+        /**
+         * Threads shared by the metadata requests of all cases.
+         */
+        private int poolSize = 20;
+        private int queueCapacity = 100;
+    }
+
+    @Data
+    public static class FormIndex {
+        /**
+         * List the case prefix in S3 and index any submission that is not yet in the index. Each
+         * case is listed until all of its submissions have been indexed once, submissions stored
+         * later are indexed when they are stored. Can be switched off once data stored before the
+         * index existed has been indexed.
+         */
+        private boolean reconcile = true;
+    }
+
+    @Data
+    public static class Detail {
+        /**
+         * Time allowed for all sections of a case to be built. Forms, actions and metrics
+         * not available by then are left out, the process instances are required.
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,41 @@
+package io.digital.patterns.workflow.cases;
+
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.cfg.StandaloneProcessEngineConfiguration;
+
+import java.io.InputStream;
+
+/**
+ * Runs the case queries in {@code case-queries.xml} through an engine command executor, so that they
+ * use the table prefix, database type and transaction handling of the process engine. It only shares
+ * the data source of the engine and can not be used to build a process engine.
+ */
+class CaseQuerySessionFactory extends StandaloneProcessEngineConfiguration {
+
+    private static final String MAPPINGS = "io/digital/patterns/workflow/cases/case-queries.xml";
+
+    CaseQuerySessionFactory(ProcessEngineConfigurationImpl processEngineConfiguration) {
+        setDataSource(processEngineConfiguration.getDataSource());
+        setDatabaseType(processEngineConfiguration.getDatabaseType());
+        setDatabaseTablePrefix(processEngineConfiguration.getDatabaseTablePrefix());
+        setDatabaseSchema(processEngineConfiguration.getDatabaseSchema());
+        initDataSource();
+        initCommandContextFactory();
+        initTransactionFactory();
+        initTransactionContextFactory();
+        initCommandExecutors();
+        initIdentityProviderSessionFactory();
+        initSqlSessionFactory();
+        initSessionFactories();
+    }
+
+    @Override
+    protected void init() {
+        throw new UnsupportedOperationException("The case query session factory can not build a process engine");
+    }
+
+    @Override
+    protected InputStream getMyBatisXmlConfigurationSteam() {
+        return getClass().getClassLoader().getResourceAsStream(MAPPINGS);
+    }
+}
@@ -0,0 +1,124 @@
+package io.digital.patterns.workflow.cases;
+
+import lombok.Data;
+import org.camunda.bpm.engine.ActivityTypes;
+import org.camunda.bpm.engine.authorization.Resources;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+
+/**
+ * Aggregate queries on the engine tables for all process instances of a case at once. The engine query
+ * API only supports these lookups one process instance at a time. The queries are mapped in
+ * {@code CaseQueries.xml} and run through an engine command executor.
+ */
+@Repository
+public class CaseRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String SELECT_USER_TASK_COUNTS = "io.digital.patterns.workflow.cases.CaseQueries.selectUserTaskCounts";
+    private static final String SELECT_AUTHORIZATIONS = "io.digital.patterns.workflow.cases.CaseQueries.selectAuthorizations";
+
+    private final ProcessEngineConfigurationImpl processEngineConfiguration;
+    private volatile CommandExecutor commandExecutor;
+
+    public CaseRepository(ProcessEngineConfigurationImpl processEngineConfiguration) {
+        this.processEngineConfiguration = processEngineConfiguration;
+    }
+
+    /**
+     * Counts the open and completed user tasks of the given process instances. Like
+     * {@link #findAuthorizations(Collection)} this reads history without the engine authorization check, the
+     * ids come from an authorized process instance query.
+     *
+     * @param processInstanceIds
+     * @return totals over all the process instances
+     */
+    public UserTaskCounts countUserTasks(Collection<String> processInstanceIds) {
+        UserTaskCounts counts = new UserTaskCounts();
+        List<String> ids = new ArrayList<>(processInstanceIds);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("activityType", ActivityTypes.TASK_USER_TASK);
+            parameters.put("processInstanceIds", ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())));
+            List<UserTaskCounts> rows = select(SELECT_USER_TASK_COUNTS, parameters);
+            rows.stream().filter(Objects::nonNull).forEach(batch -> {
+                counts.setOpen(counts.getOpen() + batch.getOpen());
+                counts.setCompleted(counts.getCompleted() + batch.getCompleted());
+            });
+        }
+        return counts;
+    }
+
+    /**
+     * Loads the process instance authorizations of the given process instances. The authorizations are read
+     * without the engine authorization check on the authorization resource: they are what decides whether
+     * the user can see the process instances, and the ids come from an authorized process instance query.
+     *
+     * @param processInstanceIds
+     * @return authorized users and groups keyed by process instance id. Instances without
+     * authorizations have no entry.
+     */
+    public Map<String, ProcessInstanceAuthorizations> findAuthorizations(Collection<String> processInstanceIds) {
+        Map<String, ProcessInstanceAuthorizations> authorizations = new HashMap<>();
+        List<String> ids = new ArrayList<>(processInstanceIds);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("resourceType", Resources.PROCESS_INSTANCE.resourceType());
+            parameters.put("resourceIds", ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())));
+            List<AuthorizationRow> rows = select(SELECT_AUTHORIZATIONS, parameters);
+            rows.forEach(row -> {
+                ProcessInstanceAuthorizations instanceAuthorizations = authorizations
+                        .computeIfAbsent(row.getResourceId(), id -> new ProcessInstanceAuthorizations());
+                Optional.ofNullable(row.getUserId())
+                        .ifPresent(instanceAuthorizations.getUserIds()::add);
+                Optional.ofNullable(row.getGroupId())
+                        .ifPresent(instanceAuthorizations.getGroupIds()::add);
+            });
+        }
+        return authorizations;
+    }
+
+    private <T> List<T> select(String statement, Map<String, Object> parameters) {
+        return commandExecutor().execute(commandContext ->
+                commandContext.getDbSqlSession().getSqlSession().selectList(statement, parameters));
+    }
+
+    /**
+     * The queries need the table prefix and database type of the built engine, so the command executor is
+     * only created on first use.
+     */
+    private CommandExecutor commandExecutor() {
+        if (commandExecutor == null) {
+            synchronized (this) {
+                if (commandExecutor == null) {
+                    commandExecutor = new CaseQuerySessionFactory(processEngineConfiguration)
+                            .getCommandExecutorTxRequired();
+                }
+            }
+        }
+        return commandExecutor;
+    }
+
+    @Data
+    public static class ProcessInstanceAuthorizations {
+        private Set<String> userIds = new HashSet<>();
+        private Set<String> groupIds = new HashSet<>();
+    }
+
+    @Data
+    public static class AuthorizationRow {
+        private String resourceId;
+        private String userId;
+        private String groupId;
+    }
+
+    @Data
+    public static class UserTaskCounts {
+        private long open;
+        private long completed;
+    }
+}
@@ -2,19 +2,27 @@ package io.digital.patterns.workflow.cases;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.digital.patterns.workflow.aws.AwsProperties;
+import io.digital.patterns.workflow.aws.PagedObjectListing;
+import io.digital.patterns.workflow.data.FormSubmission;
+import io.digital.patterns.workflow.data.FormSubmissionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
-import org.camunda.bpm.engine.ActivityTypes;
-import org.camunda.bpm.engine.AuthorizationService;
 import org.camunda.bpm.engine.HistoryService;
-import org.camunda.bpm.engine.authorization.Authorization;
-import org.camunda.bpm.engine.authorization.Resources;
+import org.camunda.bpm.engine.IdentityService;
 import org.camunda.bpm.engine.history.HistoricProcessInstance;
 import org.camunda.bpm.engine.history.HistoricProcessInstanceQuery;
+import org.camunda.bpm.engine.impl.identity.Authentication;
 import org.camunda.bpm.engine.rest.dto.history.HistoricProcessInstanceDto;
 import org.camunda.spin.Spin;
 import org.camunda.spin.json.SpinJsonNode;
@@ -26,18 +34,28 @@ import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -49,25 +67,53 @@ import static java.util.stream.Collectors.toSet;
 @Service
 public class CasesApplicationService {
 
+    private static final int BUSINESS_KEY_BATCH_SIZE = 500;
+    private static final String SECTION_TIMER = "cases.detail.section";
+    private static final String MISSING_METADATA_COUNTER = "cases.form.metadata.missing";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper(JSON_FACTORY);
+
     private final HistoryService historyService;
     private final AmazonS3 amazonS3Client;
     private final RestHighLevelClient elasticsearchClient;
     private final AwsProperties awsConfig;
     private final CaseActionService caseActionService;
-    private final AuthorizationService authorizationService;
+    private final CaseProperties caseProperties;
+    private final ExecutorService caseDetailExecutor;
+    private final ExecutorService formMetadataExecutor;
+    private final FormSubmissionRepository formSubmissionRepository;
+    private final CaseRepository caseRepository;
+    private final IdentityService identityService;
+    private final MeterRegistry meterRegistry;
+    private final CaseAuthorizationEvaluator caseAuthorizationEvaluator;
 
     public CasesApplicationService(HistoryService historyService,
                                    AmazonS3 amazonS3Client,
                                    RestHighLevelClient elasticsearchClient,
                                    AwsProperties awsConfig,
                                    CaseActionService caseActionService,
-                                   AuthorizationService authorizationService) {
+                                   CaseProperties caseProperties,
+                                   @Qualifier("caseDetailExecutor") ExecutorService caseDetailExecutor,
+                                   @Qualifier("formMetadataExecutor") ExecutorService formMetadataExecutor,
+                                   FormSubmissionRepository formSubmissionRepository,
+                                   CaseRepository caseRepository,
+                                   IdentityService identityService,
+                                   MeterRegistry meterRegistry,
+                                   CaseAuthorizationEvaluator caseAuthorizationEvaluator) {
         this.historyService = historyService;
         this.amazonS3Client = amazonS3Client;
         this.elasticsearchClient = elasticsearchClient;
         this.awsConfig = awsConfig;
         this.caseActionService = caseActionService;
-        this.authorizationService = authorizationService;
+        this.caseProperties = caseProperties;
+        this.caseDetailExecutor = caseDetailExecutor;
+        this.formMetadataExecutor = formMetadataExecutor;
+        this.formSubmissionRepository = formSubmissionRepository;
+        this.caseRepository = caseRepository;
+        this.identityService = identityService;
+        this.meterRegistry = meterRegistry;
+        this.caseAuthorizationEvaluator = caseAuthorizationEvaluator;
     }
 
     /**
@@ -103,13 +149,7 @@ public class CasesApplicationService {
                     .map(s -> s.getSourceAsMap().get("businessKey").toString())
                     .collect(toSet());
 
-            List<HistoricProcessInstance> historicProcessInstances = new ArrayList<>();
-            if (!keys.isEmpty()) {
-                final List<HistoricProcessInstance> instances = keys.stream()
-                        .map(key -> historyService.createHistoricProcessInstanceQuery()
-                                .processInstanceBusinessKey(key).list()).flatMap(List::stream).collect(toList());
-                historicProcessInstances.addAll(instances);
-            }
+            List<HistoricProcessInstance> historicProcessInstances = findByBusinessKeys(keys);
             Map<String, List<HistoricProcessInstance>> groupedByBusinessKey = historicProcessInstances
                     .stream().collect(Collectors.groupingBy(HistoricProcessInstance::getBusinessKey));
 
@@ -134,6 +174,25 @@ public class CasesApplicationService {
     }
 
 
+    /**
+     * Resolves the historic process instances for a set of business keys using IN queries rather than
+     * one query per key. Keys are chunked so the generated IN clause stays within database limits.
+     *
+     * @param businessKeys
+     * @return all historic process instances for the given business keys
+     */
+    private List<HistoricProcessInstance> findByBusinessKeys(Collection<String> businessKeys) {
+        List<HistoricProcessInstance> instances = new ArrayList<>();
+        List<String> keys = new ArrayList<>(businessKeys);
+        for (int from = 0; from < keys.size(); from += BUSINESS_KEY_BATCH_SIZE) {
+            List<String> batch = keys.subList(from, Math.min(from + BUSINESS_KEY_BATCH_SIZE, keys.size()));
+            instances.addAll(historyService.createHistoricProcessInstanceQuery()
+                    .processInstanceBusinessKeyIn(batch.toArray(new String[]{}))
+                    .list());
+        }
+        return instances;
+    }
+
     @AuditableCaseEvent
     @PostAuthorize(value = "@caseAuthorizationEvaluator.isAuthorized(returnObject, #platformUser)")
     public CaseDetail getByKey(String businessKey, List<String> excludeProcessKeys, PlatformUser platformUser) {
@@ -142,24 +201,55 @@ public class CasesApplicationService {
         CaseDetail caseDetail = new CaseDetail();
         caseDetail.setBusinessKey(businessKey);
 
+        long deadline = System.nanoTime() + caseProperties.getDetail().getTimeout().toNanos();
 
-        ObjectListing objectListing = getObjectListingForBusinessKey(businessKey);
-
-
-        List<ObjectMetadata> metadata = new ArrayList<>();
-        objectListing.getObjectSummaries().forEach(summary -> {
-            ObjectMetadata objectMetadata = amazonS3Client
-                    .getObjectMetadata(new GetObjectMetadataRequest(summary.getBucketName(), summary.getKey()));
-            objectMetadata.addUserMetadata("key", summary.getKey());
-            metadata.add(objectMetadata);
-
+        Supplier<List<CaseDetail.ProcessInstanceReference>> historySection = section("history",
+                () -> getProcessInstanceReferences(businessKey, excludeProcessKeys, platformUser));
+        Function<CaseDetail, List<CaseDetail.Action>> actionsSection = section("actions", detail -> {
+            log.info("Adding actions to case details");
+            List<CaseDetail.Action> availableActions = caseActionService.getAvailableActions(detail, platformUser);
+            log.info("No of actions for case '{}'", availableActions.size());
+            return availableActions;
         });
+        Function<CaseDetail, CaseDetail.CaseMetrics> metricsSection = section("metrics", this::createMetrics);
+
+        // actions and metrics read their own copy of the case detail, only this thread writes to it
+        CompletableFuture<List<CaseDetail.ProcessInstanceReference>> processInstances =
+                CompletableFuture.supplyAsync(historySection, caseDetailExecutor);
+        CompletableFuture<CaseDetail> snapshot = processInstances
+                .thenApply(instanceReferences -> snapshot(businessKey, instanceReferences));
+        CompletableFuture<List<CaseDetail.Action>> actions =
+                snapshot.thenApplyAsync(actionsSection, caseDetailExecutor);
+        CompletableFuture<CaseDetail.CaseMetrics> metrics =
+                snapshot.thenApplyAsync(metricsSection, caseDetailExecutor);
+
+        Map<String, List<CaseDetail.FormReference>> byProcessInstanceId = getOrDefault("forms",
+                () -> section("forms", () -> getFormReferences(businessKey)).get(), new HashMap<>());
+
+        List<CaseDetail.ProcessInstanceReference> instanceReferences = await(processInstances, deadline);
+        caseDetail.setActions(getOrDefault("actions", () -> await(actions, deadline), new ArrayList<>()));
+        caseDetail.setMetrics(getOrDefault("metrics", () -> await(metrics, deadline), null));
+
+        // form references are applied once actions and metrics are done or abandoned, neither reads them
+        instanceReferences.forEach(reference -> Optional
+                .ofNullable(byProcessInstanceId.get(reference.getId()))
+                .ifPresent(reference::setFormReferences));
+        caseDetail.setProcessInstances(instanceReferences);
 
+        log.info("Returning case details to '{}' with business key '{}'", platformUser.getEmail(), businessKey);
+        return caseDetail;
+    }
 
-        Map<String, List<ObjectMetadata>> byProcessInstanceId = metadata
-                .stream()
-                .collect(Collectors.groupingBy(meta -> meta.getUserMetaDataOf("processinstanceid")));
+    private CaseDetail snapshot(String businessKey, List<CaseDetail.ProcessInstanceReference> instanceReferences) {
+        CaseDetail snapshot = new CaseDetail();
+        snapshot.setBusinessKey(businessKey);
+        snapshot.setProcessInstances(List.copyOf(instanceReferences));
+        return snapshot;
+    }
 
+    private List<CaseDetail.ProcessInstanceReference> getProcessInstanceReferences(String businessKey,
+                                                                                   List<String> excludeProcessKeys,
+                                                                                   PlatformUser platformUser) {
         final HistoricProcessInstanceQuery historicProcessInstanceQuery =
                 historyService.createHistoricProcessInstanceQuery();
 
@@ -169,32 +259,181 @@ public class CasesApplicationService {
         List<HistoricProcessInstance> processInstances = historicProcessInstanceQuery
                 .processInstanceBusinessKey(businessKey).list();
 
-        List<CaseDetail.ProcessInstanceReference> instanceReferences = processInstances
+        Map<String, CaseRepository.ProcessInstanceAuthorizations> authorizations = caseRepository
+                .findAuthorizations(processInstances.stream().map(HistoricProcessInstance::getId).collect(toList()));
+
+        return processInstances
                 .stream()
-                .filter(instance -> this.candidateGroupFilter(instance, platformUser))
-                .map(historicProcessInstance ->
-                        toCaseReference(byProcessInstanceId, historicProcessInstance))
+                .filter(instance -> this.candidateGroupFilter(instance, authorizations, platformUser))
+                .map(this::toCaseReference)
                 .collect(toList());
+    }
 
-        caseDetail.setProcessInstances(instanceReferences);
+    /**
+     * Wraps a case detail section so that it can run on the case detail executor. The engine authentication,
+     * security context and logging context of the calling thread are captured when the section is created
+     * and applied on the thread that runs it, and the time taken is recorded against the section.
+     *
+     * @param name section name used as the timer tag
+     * @param supplier the section
+     * @return supplier to be run on any thread
+     */
+    private <T> Supplier<T> section(String name, Supplier<T> supplier) {
+        Function<Void, T> section = section(name, ignored -> supplier.get());
+        return () -> section.apply(null);
+    }
 
+    /**
+     * Wraps a case detail section that takes an input, see {@link #section(String, Supplier)}.
+     */
+    private <I, T> Function<I, T> section(String name, Function<I, T> function) {
+        Authentication authentication = identityService.getCurrentAuthentication();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        Map<String, String> contextMap = MDC.getCopyOfContextMap();
+        Timer timer = Timer.builder(SECTION_TIMER)
+                .description("Time taken to build a section of the case details")
+                .tag("section", name)
+                .register(meterRegistry);
+        return input -> {
+            Authentication previousAuthentication = identityService.getCurrentAuthentication();
+            SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+            Map<String, String> previousContextMap = MDC.getCopyOfContextMap();
+            setAuthentication(authentication);
+            SecurityContextHolder.setContext(securityContext);
+            setContextMap(contextMap);
+            try {
+                return timer.record(() -> function.apply(input));
+            } finally {
+                setAuthentication(previousAuthentication);
+                SecurityContextHolder.setContext(previousSecurityContext);
+                setContextMap(previousContextMap);
+            }
+        };
+    }
+
+    private void setAuthentication(Authentication authentication) {
+        if (authentication != null) {
+            identityService.setAuthentication(authentication);
+        } else {
+            identityService.clearAuthentication();
+        }
+    }
+
+    private void setContextMap(Map<String, String> contextMap) {
+        if (contextMap != null) {
+            MDC.setContextMap(contextMap);
+        } else {
+            MDC.clear();
+        }
+    }
+
+    /**
+     * Waits for a section until the case detail deadline. Failures of the section are rethrown.
+     */
+    private <T> T await(CompletableFuture<T> future, long deadline) {
         try {
-            log.info("Adding actions to case details");
-            caseDetail.setActions(caseActionService.getAvailableActions(caseDetail, platformUser));
-            log.info("No of actions for case '{}'", caseDetail.getActions().size());
-        } catch (Exception e) {
-            log.error("Failed to build actions", e);
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building case details", e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IllegalStateException(format("Case details not built within '%s'",
+                    caseProperties.getDetail().getTimeout()), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
         }
+    }
 
+    private <T> T getOrDefault(String name, Supplier<T> supplier, T defaultValue) {
         try {
-            CaseDetail.CaseMetrics metrics = createMetrics(caseDetail);
-            caseDetail.setMetrics(metrics);
+            return supplier.get();
         } catch (Exception e) {
-            log.error("Failed to build metrics", e);
+            log.error("Failed to build {}", name, e);
+            return defaultValue;
         }
+    }
 
-        log.info("Returning case details to '{}' with business key '{}'", platformUser.getEmail(), businessKey);
-        return caseDetail;
+    /**
+     * Fetches the metadata of the given objects with concurrent HEAD requests on the form metadata executor.
+     * No more than the configured number of requests are in flight for one case and the whole fan-out
+     * is bounded by a deadline. Objects whose metadata could not be loaded in time are left out, as are
+     * the objects left when the executor is too busy to accept any request for the case.
+     *
+     * @param summaries
+     * @return metadata in the same order as the summaries
+     */
+    private List<ObjectMetadata> getObjectMetadata(List<S3ObjectSummary> summaries) {
+        if (summaries.isEmpty()) {
+            return new ArrayList<>();
+        }
+        CaseProperties.FormMetadata config = caseProperties.getFormMetadata();
+        Queue<S3ObjectSummary> pending = new ConcurrentLinkedQueue<>(summaries);
+        Map<String, ObjectMetadata> fetched = new ConcurrentHashMap<>();
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+
+        Callable<Void> worker = () -> {
+            S3ObjectSummary summary;
+            while (!Thread.currentThread().isInterrupted() && (summary = pending.poll()) != null) {
+                try {
+                    ObjectMetadata objectMetadata = amazonS3Client.getObjectMetadata(
+                            new GetObjectMetadataRequest(summary.getBucketName(), summary.getKey()));
+                    objectMetadata.addUserMetadata("key", summary.getKey());
+                    fetched.put(summary.getKey(), objectMetadata);
+                } catch (Exception e) {
+                    log.error("Failed to get metadata for '{}'", summary.getKey(), e);
+                    failed.add(summary.getKey());
+                }
+            }
+            return null;
+        };
+
+        long deadline = System.nanoTime() + config.getTimeout().toNanos();
+        List<Future<Void>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(config.getConcurrency(), summaries.size()); i++) {
+                workers.add(formMetadataExecutor.submit(worker));
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("Loading metadata with '{}' requests in parallel as the executor is busy", workers.size());
+        }
+        try {
+            for (Future<Void> submitted : workers) {
+                submitted.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Stopped loading metadata within '{}'", config.getTimeout(), e);
+        } finally {
+            pending.clear();
+            workers.forEach(submitted -> submitted.cancel(true));
+        }
+
+        if (fetched.size() < summaries.size()) {
+            log.warn("Loaded metadata for '{}' of '{}' submissions within '{}'", fetched.size(),
+                    summaries.size(), config.getTimeout());
+            String unfinished = workers.isEmpty() ? "rejected" : "timeout";
+            summaries.stream()
+                    .map(S3ObjectSummary::getKey)
+                    .filter(key -> !fetched.containsKey(key))
+                    .forEach(key -> {
+                        String reason = failed.contains(key) ? "failed" : unfinished;
+                        log.warn("Left out submission '{}' as its metadata was not loaded ({})", key, reason);
+                        Counter.builder(MISSING_METADATA_COUNTER)
+                                .description("Form submissions left out because their metadata was not loaded")
+                                .tag("reason", reason)
+                                .register(meterRegistry)
+                                .increment();
+                    });
+        }
+        return summaries.stream()
+                .map(summary -> fetched.get(summary.getKey()))
+                .filter(Objects::nonNull)
+                .collect(toList());
     }
 
     /**
@@ -203,34 +442,27 @@ public class CasesApplicationService {
      * the instance is returned otherwise it is not.
      *
      * @param historicProcessInstance
+     * @param authorizations process instance authorizations of the case keyed by process instance id
      * @param platformUser
      * @return true/false
      */
-    private boolean candidateGroupFilter(HistoricProcessInstance historicProcessInstance, PlatformUser platformUser) {
+    private boolean candidateGroupFilter(HistoricProcessInstance historicProcessInstance,
+                                         Map<String, CaseRepository.ProcessInstanceAuthorizations> authorizations,
+                                         PlatformUser platformUser) {
 
-        List<Authorization> authorizations = authorizationService.createAuthorizationQuery()
-                .resourceId(historicProcessInstance.getId())
-                .resourceType(Resources.PROCESS_INSTANCE)
-                .list();
+        CaseRepository.ProcessInstanceAuthorizations instanceAuthorizations =
+                authorizations.get(historicProcessInstance.getId());
 
-        if (authorizations.isEmpty()) {
+        if (instanceAuthorizations == null) {
             return true;
         }
 
-        List<String> candidateUsers =
-                authorizations.stream().map(Authorization::getUserId).filter(Objects::nonNull)
-                        .collect(Collectors.toList());
-
-        if (!candidateUsers.isEmpty()) {
-            return candidateUsers.contains(platformUser.getEmail());
+        if (!instanceAuthorizations.getUserIds().isEmpty()) {
+            return instanceAuthorizations.getUserIds().contains(platformUser.getEmail());
         }
-        List<String> candidateGroups =
-                authorizations.stream().map(Authorization::getGroupId).filter(Objects::nonNull)
-                        .collect(Collectors.toList());
-
 
         List<String> roles = platformUser.getRoles();
-        return !roles.stream().filter(candidateGroups::contains).collect(Collectors.toList()).isEmpty();
+        return roles.stream().anyMatch(instanceAuthorizations.getGroupIds()::contains);
 
     }
 
@@ -251,25 +483,11 @@ public class CasesApplicationService {
                 .stream()
                 .map(CaseDetail.ProcessInstanceReference::getId).collect(toList());
 
-        Long totalOpenUserTasks = processInstanceIds
-                .stream().map(id -> historyService
-                        .createHistoricActivityInstanceQuery()
-                        .processInstanceId(id)
-                        .activityType(ActivityTypes.TASK_USER_TASK)
-                        .unfinished()
-                        .count()).mapToLong(Long::longValue).sum();
-
-        metrics.setNoOfOpenUserTasks(totalOpenUserTasks);
+        CaseRepository.UserTaskCounts userTaskCounts = caseRepository.countUserTasks(processInstanceIds);
 
-        Long totalCompletedUserTasks = processInstanceIds
-                .stream().map(id -> historyService
-                        .createHistoricActivityInstanceQuery()
-                        .processInstanceId(id)
-                        .activityType(ActivityTypes.TASK_USER_TASK)
-                        .finished()
-                        .count()).mapToLong(Long::longValue).sum();
+        metrics.setNoOfOpenUserTasks(userTaskCounts.getOpen());
 
-        metrics.setNoOfCompletedUserTasks(totalCompletedUserTasks);
+        metrics.setNoOfCompletedUserTasks(userTaskCounts.getCompleted());
 
 
         long overallTimeInSeconds = completedProcessInstances.stream()
@@ -294,8 +512,7 @@ public class CasesApplicationService {
     }
 
 
-    private CaseDetail.ProcessInstanceReference toCaseReference(Map<String, List<ObjectMetadata>> byProcessInstanceId,
-                                                                HistoricProcessInstance historicProcessInstance) {
+    private CaseDetail.ProcessInstanceReference toCaseReference(HistoricProcessInstance historicProcessInstance) {
         CaseDetail.ProcessInstanceReference reference = new CaseDetail.ProcessInstanceReference();
         reference.setId(historicProcessInstance.getId());
         reference.setDefinitionId(historicProcessInstance.getProcessDefinitionId());
@@ -303,29 +520,83 @@ public class CasesApplicationService {
         reference.setKey(historicProcessInstance.getProcessDefinitionKey());
         reference.setStartDate(historicProcessInstance.getStartTime());
         reference.setEndDate(historicProcessInstance.getEndTime());
-
-        List<ObjectMetadata> metadataByProcessDefinition = byProcessInstanceId.get(historicProcessInstance.getId());
-        if (metadataByProcessDefinition != null) {
-            reference.setFormReferences(
-                    metadataByProcessDefinition.stream().map(this::toFormReference).collect(toList())
-            );
-        }
         return reference;
     }
 
+    /**
+     * Loads the form references of a case from the form submission index. When reconciliation is enabled
+     * the case prefix is listed as well and any object missing from the index, for example data stored
+     * before the index existed, is read from S3 and added to the index.
+     *
+     * @param businessKey
+     * @return form references grouped by process instance id
+     */
+    private Map<String, List<CaseDetail.FormReference>> getFormReferences(String businessKey) {
+        String bucket = awsConfig.getCaseBucketName();
+        List<FormSubmission> submissions = new ArrayList<>(
+                formSubmissionRepository.findByBusinessKey(bucket, businessKey));
+
+        if (caseProperties.getFormIndex().isReconcile()
+                && !formSubmissionRepository.isReconciled(bucket, businessKey)) {
+            Set<String> indexed = submissions.stream().map(FormSubmission::getKey).collect(toSet());
+            List<S3ObjectSummary> unindexed = getObjectListingForBusinessKey(businessKey)
+                    .stream()
+                    .filter(summary -> !indexed.contains(summary.getKey()))
+                    .collect(toList());
+
+            boolean complete = true;
+            if (!unindexed.isEmpty()) {
+                log.info("Indexing '{}' form submissions for case", unindexed.size());
+                List<ObjectMetadata> metadata = getObjectMetadata(unindexed);
+                complete = metadata.size() == unindexed.size();
+                for (ObjectMetadata objectMetadata : metadata) {
+                    FormSubmission submission = toFormSubmission(bucket, businessKey, objectMetadata);
+                    try {
+                        formSubmissionRepository.save(submission);
+                    } catch (Exception e) {
+                        log.error("Failed to index form submission '{}'", submission.getKey(), e);
+                        complete = false;
+                    }
+                    submissions.add(submission);
+                }
+                submissions.sort(Comparator.comparing(FormSubmission::getKey));
+            }
+            // the case is only listed again if a submission could not be indexed
+            if (complete) {
+                formSubmissionRepository.markReconciled(bucket, businessKey);
+            }
+        }
 
-    private CaseDetail.FormReference toFormReference(final ObjectMetadata metadata) {
-        final CaseDetail.FormReference formReference = new CaseDetail.FormReference();
-        formReference.setFormVersionId(metadata.getUserMetaDataOf("formversionid"));
-        formReference.setName(metadata.getUserMetaDataOf("name"));
-        formReference.setTitle(metadata.getUserMetaDataOf("title"));
-        formReference.setDataPath(metadata.getUserMetaDataOf("key"));
-        formReference.setSubmissionDate(metadata.getUserMetaDataOf("submissiondate"));
+        return submissions.stream()
+                .filter(submission -> submission.getProcessInstanceId() != null)
+                .collect(Collectors.groupingBy(FormSubmission::getProcessInstanceId,
+                        Collectors.mapping(this::toFormReference, toList())));
+    }
+
+    private FormSubmission toFormSubmission(String bucket, String businessKey, ObjectMetadata metadata) {
+        FormSubmission submission = new FormSubmission();
+        submission.setBucket(bucket);
+        submission.setBusinessKey(businessKey);
+        submission.setKey(metadata.getUserMetaDataOf("key"));
+        submission.setProcessInstanceId(metadata.getUserMetaDataOf("processinstanceid"));
+        submission.setProcessDefinitionId(metadata.getUserMetaDataOf("processdefinitionid"));
+        submission.setFormVersionId(metadata.getUserMetaDataOf("formversionid"));
+        submission.setName(metadata.getUserMetaDataOf("name"));
+        submission.setTitle(metadata.getUserMetaDataOf("title"));
+        submission.setSubmissionDate(metadata.getUserMetaDataOf("submissiondate"));
         Optional.ofNullable(metadata.getUserMetaDataOf("submittedby"))
-                .ifPresent(user -> formReference.setSubmittedBy(
-                        URLDecoder.decode(metadata.getUserMetaDataOf("submittedby"),
-                                StandardCharsets.UTF_8)));
+                .ifPresent(user -> submission.setSubmittedBy(URLDecoder.decode(user, StandardCharsets.UTF_8)));
+        return submission;
+    }
 
+    private CaseDetail.FormReference toFormReference(final FormSubmission submission) {
+        final CaseDetail.FormReference formReference = new CaseDetail.FormReference();
+        formReference.setFormVersionId(submission.getFormVersionId());
+        formReference.setName(submission.getName());
+        formReference.setTitle(submission.getTitle());
+        formReference.setDataPath(submission.getKey());
+        formReference.setSubmissionDate(submission.getSubmissionDate());
+        formReference.setSubmittedBy(submission.getSubmittedBy());
         return formReference;
 
     }
@@ -346,22 +617,105 @@ public class CasesApplicationService {
 
 
     public SpinJsonNode getSubmissionData(String businessKey) {
-        ObjectListing objectListing = getObjectListingForBusinessKey(businessKey);
         JSONArray jsonArray = new JSONArray();
-        objectListing.getObjectSummaries().forEach(summary -> {
-            S3Object object = amazonS3Client.getObject(awsConfig.getCaseBucketName(), summary.getKey());
-            try {
+        for (S3ObjectSummary summary : getObjectListingForBusinessKey(businessKey)) {
+            try (S3Object object = amazonS3Client.getObject(awsConfig.getCaseBucketName(), summary.getKey())) {
                 JSONObject data = new JSONObject(IOUtils.toString(object.getObjectContent(), StandardCharsets.UTF_8));
                 jsonArray.put(data);
             } catch (Exception e) {
                 log.error("Failed to load data", e);
             }
-        });
+        }
         return Spin.JSON(jsonArray.toString());
     }
 
-    private ObjectListing getObjectListingForBusinessKey(String businessKey) {
-        return amazonS3Client
-                .listObjects(awsConfig.getCaseBucketName(), format("%s/", businessKey));
+    /**
+     * Writes every submission of a case to the output stream as newline delimited JSON. Each object is
+     * read on its own, so the heap used depends on the largest submission rather than the size of the
+     * case, and the next object is requested while the current one is being written.
+     * <p>
+     * Every submission goes through the same check as {@link #getSubmissionData(String, String, PlatformUser)},
+     * submissions the user is not allowed to view are left out. Submissions that cannot be read are
+     * logged and left out so that they do not cut the response short.
+     *
+     * @param businessKey
+     * @param outputStream
+     * @param platformUser
+     * @throws IOException
+     */
+    @AuditableCaseEvent
+    @PreAuthorize(value = "@caseAuthorizationEvaluator.isAuthorized(#businessKey, #platformUser)")
+    public void writeSubmissionData(String businessKey, OutputStream outputStream,
+                                    PlatformUser platformUser) throws IOException {
+        Iterator<S3ObjectSummary> summaries = getObjectListingForBusinessKey(businessKey).iterator();
+        CompletableFuture<S3Object> next = summaries.hasNext() ? fetchObject(summaries.next()) : null;
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream)) {
+            generator.setRootValueSeparator(null);
+            while (next != null) {
+                S3Object object = awaitObject(next);
+                next = summaries.hasNext() ? fetchObject(summaries.next()) : null;
+                if (object == null) {
+                    continue;
+                }
+                JsonNode submission = readSubmission(object);
+                if (submission == null) {
+                    continue;
+                }
+                if (!caseAuthorizationEvaluator.isAuthorized(Spin.JSON(submission), platformUser)) {
+                    log.warn("'{}' is not allowed to view '{}'", platformUser.getEmail(), object.getKey());
+                    continue;
+                }
+                OBJECT_MAPPER.writeTree(generator, submission);
+                generator.writeRaw('\n');
+                generator.flush();
+            }
+        } finally {
+            if (next != null) {
+                next.thenAccept(this::closeQuietly);
+            }
+        }
+    }
+
+    /**
+     * @return the submission, or null if it is empty or could not be read
+     */
+    private JsonNode readSubmission(S3Object object) {
+        try (S3Object current = object) {
+            JsonNode submission = OBJECT_MAPPER.readTree(current.getObjectContent());
+            return submission == null || submission.isMissingNode() ? null : submission;
+        } catch (Exception e) {
+            log.error("Failed to load data '{}'", object.getKey(), e);
+            return null;
+        }
+    }
+
+    private CompletableFuture<S3Object> fetchObject(S3ObjectSummary summary) {
+        return CompletableFuture.supplyAsync(() ->
+                amazonS3Client.getObject(summary.getBucketName(), summary.getKey()), caseDetailExecutor);
+    }
+
+    private S3Object awaitObject(CompletableFuture<S3Object> object) throws InterruptedIOException {
+        try {
+            return object.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading submission data");
+        } catch (ExecutionException e) {
+            log.error("Failed to load data", e.getCause());
+            return null;
+        }
+    }
+
+    private void closeQuietly(S3Object object) {
+        try {
+            object.close();
+        } catch (IOException e) {
+            log.warn("Failed to close '{}'", object.getKey());
+        }
+    }
+
+    private PagedObjectListing getObjectListingForBusinessKey(String businessKey) {
+        return new PagedObjectListing(amazonS3Client, awsConfig.getCaseBucketName(), format("%s/", businessKey));
     }
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+package io.digital.patterns.workflow.data;
+
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Batches form data index requests into bulk requests. A bulk request is sent once the configured
+ * number of actions or size is reached, once the flush interval has passed or when {@link #flush()}
+ * is called. Only a limited number of bulk requests are in flight at a time, adding to a full batch
+ * blocks until one completes. Requests rejected by Elasticsearch are retried with backoff.
+ * <p>
+ * The items of a bulk response are matched to the requests by index and id, as the response to a
+ * retried bulk request lists the retried items after the ones that succeeded first time.
+ */
+@Slf4j
+@Component
+public class FormDataIndexer {
+
+    private final BulkProcessor bulkProcessor;
+    private final FormDataProperties.Indexer config;
+    private final Map<String, Deque<CompletableFuture<Void>>> pending = new HashMap<>();
+
+    public FormDataIndexer(RestHighLevelClient elasticsearchClient, FormDataProperties formDataProperties) {
+        this(formDataProperties, bulkAsync(elasticsearchClient));
+    }
+
+    FormDataIndexer(FormDataProperties formDataProperties,
+                    BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkConsumer) {
+        this.config = formDataProperties.getIndexer();
+        this.bulkProcessor = BulkProcessor.builder(bulkConsumer, new Listener())
+                .setBulkActions(config.getBulkActions())
+                .setBulkSize(new ByteSizeValue(config.getBulkSize().toBytes(), ByteSizeUnit.BYTES))
+                .setFlushInterval(TimeValue.timeValueMillis(config.getFlushInterval().toMillis()))
+                .setConcurrentRequests(config.getConcurrentRequests())
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(
+                        TimeValue.timeValueMillis(config.getInitialBackoff().toMillis()), config.getMaxRetries()))
+                .build();
+    }
+
+    /**
+     * Adds a request to the current batch.
+     *
+     * @param request
+     * @return completed once the document has been indexed, or exceptionally if indexing failed
+     */
+    public CompletableFuture<Void> index(IndexRequest request) {
+        CompletableFuture<Void> indexed = new CompletableFuture<>();
+        String key = key(request.index(), request.id());
+        synchronized (pending) {
+            pending.computeIfAbsent(key, k -> new ArrayDeque<>()).add(indexed);
+        }
+        try {
+            bulkProcessor.add(request);
+        } catch (RuntimeException e) {
+            synchronized (pending) {
+                Deque<CompletableFuture<Void>> futures = pending.get(key);
+                futures.remove(indexed);
+                if (futures.isEmpty()) {
+                    pending.remove(key);
+                }
+            }
+            indexed.completeExceptionally(e);
+        }
+        return indexed;
+    }
+
+    /**
+     * Sends the current batch without waiting for a threshold to be reached.
+     */
+    public void flush() {
+        bulkProcessor.flush();
+    }
+
+    @PreDestroy
+    public void close() {
+        try {
+            if (!bulkProcessor.awaitClose(config.getCloseTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Form data index requests still in flight after '{}'", config.getCloseTimeout());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulkAsync(
+            RestHighLevelClient elasticsearchClient) {
+        RequestOptions.Builder builder = RequestOptions.DEFAULT.toBuilder();
+        builder.addHeader("Content-Type", "application/json");
+        RequestOptions requestOptions = builder.build();
+        return (request, listener) -> elasticsearchClient.bulkAsync(request, requestOptions, listener);
+    }
+
+    private static String key(String index, String id) {
+        return index + "/" + id;
+    }
+
+    /**
+     * @return the future of the oldest pending request for the document, or null if there is none
+     */
+    private CompletableFuture<Void> complete(String index, String id) {
+        String key = key(index, id);
+        synchronized (pending) {
+            Deque<CompletableFuture<Void>> futures = pending.get(key);
+            if (futures == null) {
+                return null;
+            }
+            CompletableFuture<Void> indexed = futures.poll();
+            if (futures.isEmpty()) {
+                pending.remove(key);
+            }
+            return indexed;
+        }
+    }
+
+    private class Listener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            log.debug("Sending '{}' form data index requests", request.numberOfActions());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            BulkItemResponse[] items = response.getItems();
+            for (BulkItemResponse item : items) {
+                CompletableFuture<Void> indexed = complete(item.getIndex(), item.getId());
+                if (item.isFailed()) {
+                    log.error("Failed to create a document '{}' in ES due to '{}'", item.getId(),
+                            item.getFailureMessage());
+                    if (indexed != null) {
+                        indexed.completeExceptionally(item.getFailure().getCause());
+                    }
+                } else if (indexed != null) {
+                    indexed.complete(null);
+                }
+            }
+            log.info("Indexed '{}' documents in '{}'", items.length, response.getTook());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.error("Failed to send '{}' form data index requests due to '{}'", request.numberOfActions(),
+                    failure.getMessage());
+            request.requests().forEach(failed -> {
+                CompletableFuture<Void> indexed = complete(failed.index(), failed.id());
+                if (indexed != null) {
+                    indexed.completeExceptionally(failure);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.digital.patterns.workflow.data;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Durable queue of variables whose form data still has to be stored in S3 and Elasticsearch.
+ * Entries are added in the engine transaction that wrote the variable and removed by the
+ * {@link FormDataOutboxDispatcher} once the forms have been stored.
+ */
+@Repository
+public class FormDataOutbox {
+
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private static final String INSERT = "insert into form_data_outbox (id, process_instance_id, " +
+            "process_definition_id, execution_id, payload, attempts, next_attempt, created) " +
+            "values (?, ?, ?, ?, ?, 0, ?, ?)";
+
+    private static final String FIND_DUE = "select id, process_instance_id, process_definition_id, " +
+            "execution_id, payload, attempts, next_attempt, created from form_data_outbox " +
+            "where next_attempt <= ? and attempts < ? order by created limit ?";
+
+    private static final String CLAIM = "update form_data_outbox set attempts = attempts + 1, next_attempt = ? " +
+            "where id = ? and attempts = ?";
+
+    private static final String RESCHEDULE = "update form_data_outbox set next_attempt = ?, last_error = ? " +
+            "where id = ?";
+
+    private static final String DELETE = "delete from form_data_outbox where id = ?";
+
+    private static final RowMapper<FormDataOutboxEntry> ROW_MAPPER = (rs, rowNum) -> {
+        FormDataOutboxEntry entry = new FormDataOutboxEntry();
+        entry.setId(rs.getString("id"));
+        entry.setProcessInstanceId(rs.getString("process_instance_id"));
+        entry.setProcessDefinitionId(rs.getString("process_definition_id"));
+        entry.setExecutionId(rs.getString("execution_id"));
+        entry.setPayload(rs.getString("payload"));
+        entry.setAttempts(rs.getInt("attempts"));
+        entry.setNextAttempt(rs.getTimestamp("next_attempt").toInstant());
+        entry.setCreated(rs.getTimestamp("created").toInstant());
+        return entry;
+    };
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public FormDataOutbox(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void createSchema() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("db/form-data-outbox.sql"));
+        transactionTemplate.executeWithoutResult(status -> populator.execute(dataSource));
+    }
+
+    /**
+     * Adds an entry in the current transaction, so that it is only visible once the engine
+     * transaction that wrote the variable has committed.
+     *
+     * @param entry
+     * @return id of the entry
+     */
+    public String add(FormDataOutboxEntry entry) {
+        String id = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+        jdbcTemplate.update(INSERT,
+                id,
+                entry.getProcessInstanceId(),
+                entry.getProcessDefinitionId(),
+                entry.getExecutionId(),
+                entry.getPayload(),
+                Timestamp.from(now),
+                Timestamp.from(now));
+        return id;
+    }
+
+    public List<FormDataOutboxEntry> findDue(Instant now, int maxAttempts, int limit) {
+        return transactionTemplate.execute(status ->
+                jdbcTemplate.query(FIND_DUE, ROW_MAPPER, Timestamp.from(now), maxAttempts, limit));
+    }
+
+    /**
+     * Claims an entry until the given time. The claim only succeeds if no other dispatcher has
+     * claimed the entry since it was read.
+     *
+     * @param entry
+     * @param until
+     * @return true if the entry was claimed
+     */
+    public boolean claim(FormDataOutboxEntry entry, Instant until) {
+        Integer updated = transactionTemplate.execute(status -> jdbcTemplate.update(CLAIM,
+                Timestamp.from(until), entry.getId(), entry.getAttempts()));
+        return updated != null && updated == 1;
+    }
+
+    public void reschedule(String id, Instant nextAttempt, String error) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(RESCHEDULE,
+                Timestamp.from(nextAttempt), StringUtils.abbreviate(error, MAX_ERROR_LENGTH), id));
+    }
+
+    public void delete(String id) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(DELETE, id));
+    }
+}
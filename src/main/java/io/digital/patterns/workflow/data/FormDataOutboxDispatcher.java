@@ -0,0 +1,209 @@
+package io.digital.patterns.workflow.data;
+
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.HistoryService;
+import org.camunda.bpm.engine.ProcessEngineException;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.history.HistoricProcessInstance;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.String.format;
+
+/**
+ * Drains the {@link FormDataOutbox} on its own thread pool. Each entry is claimed before it is processed
+ * so several engine nodes can dispatch from the same outbox. Failed entries are retried with exponential
+ * backoff and are left in the outbox once the maximum number of attempts has been reached, when an
+ * incident is raised on the execution that wrote them.
+ */
+@Slf4j
+public class FormDataOutboxDispatcher {
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+    private static final String FAILED_TO_CREATE_S3_RECORD = "FAILED_TO_CREATE_S3_RECORD";
+
+    private final FormDataOutbox outbox;
+    private final FormDataProperties.Outbox config;
+    private final HistoryService historyService;
+    private final RuntimeService runtimeService;
+    private final FormObjectSplitter formObjectSplitter;
+    private final ProductBucketResolver productBucketResolver;
+    private final FormDataService formDataService;
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    public FormDataOutboxDispatcher(FormDataOutbox outbox,
+                                    FormDataProperties.Outbox config,
+                                    HistoryService historyService,
+                                    RuntimeService runtimeService,
+                                    FormObjectSplitter formObjectSplitter,
+                                    ProductBucketResolver productBucketResolver,
+                                    FormDataService formDataService) {
+        this.outbox = outbox;
+        this.config = config;
+        this.historyService = historyService;
+        this.runtimeService = runtimeService;
+        this.formObjectSplitter = formObjectSplitter;
+        this.productBucketResolver = productBucketResolver;
+        this.formDataService = formDataService;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newScheduledThreadPool(config.getThreads(),
+                new CustomizableThreadFactory("form-data-outbox-"));
+        for (int i = 0; i < config.getThreads(); i++) {
+            executor.scheduleWithFixedDelay(this::dispatchQuietly, 0,
+                    config.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+        }
+        log.info("Form data outbox dispatcher started");
+    }
+
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        log.info("Form data outbox dispatcher stopped");
+    }
+
+    /**
+     * Dispatches outstanding entries without waiting for the next poll. Used once an engine transaction
+     * that added entries has committed.
+     */
+    public void wakeUp() {
+        ScheduledExecutorService current = executor;
+        if (current != null && wakeUpPending.compareAndSet(false, true)) {
+            current.execute(() -> {
+                wakeUpPending.set(false);
+                dispatchQuietly();
+            });
+        }
+    }
+
+    /**
+     * Processes the entries that are due on the calling thread. The forms of a batch of entries are
+     * submitted together and indexed with one flush before any entry is completed.
+     *
+     * @return number of entries stored
+     */
+    public int dispatch() {
+        int stored = 0;
+        List<FormDataOutboxEntry> entries;
+        do {
+            entries = outbox.findDue(Instant.now(), config.getMaxAttempts(), config.getBatchSize());
+            Map<FormDataOutboxEntry, CompletableFuture<Void>> submitted = new LinkedHashMap<>();
+            for (FormDataOutboxEntry entry : entries) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (outbox.claim(entry, Instant.now().plus(config.getLease()))) {
+                    submitted.put(entry, submit(entry));
+                }
+            }
+            if (!submitted.isEmpty()) {
+                formDataService.flush();
+            }
+            for (Map.Entry<FormDataOutboxEntry, CompletableFuture<Void>> entry : submitted.entrySet()) {
+                if (complete(entry.getKey(), entry.getValue())) {
+                    stored++;
+                }
+            }
+        } while (entries.size() == config.getBatchSize() && !Thread.currentThread().isInterrupted());
+        return stored;
+    }
+
+    private void dispatchQuietly() {
+        try {
+            dispatch();
+        } catch (Exception e) {
+            log.error("Failed to dispatch form data outbox", e);
+        }
+    }
+
+    private CompletableFuture<Void> submit(FormDataOutboxEntry entry) {
+        try {
+            HistoricProcessInstance processInstance = historyService.createHistoricProcessInstanceQuery()
+                    .processInstanceId(entry.getProcessInstanceId()).singleResult();
+            List<FormObject> forms = formObjectSplitter.split(entry.getPayload());
+            if (forms.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            String product = productBucketResolver.resolve(entry.getProcessDefinitionId());
+            return CompletableFuture.allOf(forms.stream()
+                    .map(form -> {
+                        log.info("Initiating save of form data");
+                        return formDataService.save(form, processInstance, product)
+                                .thenAccept(key -> log.info("Saved form data '{}'", key));
+                    })
+                    .toArray(CompletableFuture[]::new));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private boolean complete(FormDataOutboxEntry entry, CompletableFuture<Void> saved) {
+        int attempt = entry.getAttempts() + 1;
+        try {
+            saved.get(config.getLease().toMillis(), TimeUnit.MILLISECONDS);
+            outbox.delete(entry.getId());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if (attempt >= config.getMaxAttempts()) {
+                log.error("Failed to save data to S3/ES for process instance '{}' after '{}' attempts, " +
+                        "leaving outbox entry '{}'", entry.getProcessInstanceId(), attempt, entry.getId(), cause);
+                createIncident(entry, cause);
+            } else {
+                log.warn("Failed to save data to S3/ES for process instance '{}' on attempt '{}' due to {}",
+                        entry.getProcessInstanceId(), attempt, cause.getMessage());
+            }
+            outbox.reschedule(entry.getId(), Instant.now().plus(backoff(attempt)), cause.toString());
+            return false;
+        }
+    }
+
+    private void createIncident(FormDataOutboxEntry entry, Throwable cause) {
+        try {
+            runtimeService.createIncident(
+                    FAILED_TO_CREATE_S3_RECORD,
+                    entry.getExecutionId(),
+                    format("Failed to store form data for process instance %s", entry.getProcessInstanceId()),
+                    cause.getMessage());
+        } catch (ProcessEngineException e) {
+            log.warn("Unable to create incident for outbox entry '{}' as execution '{}' has ended",
+                    entry.getId(), entry.getExecutionId());
+        }
+    }
+
+    private Duration backoff(int attempt) {
+        Duration backoff = config.getInitialBackoff().multipliedBy(1L << Math.min(attempt - 1, 20));
+        return backoff.compareTo(config.getMaxBackoff()) > 0 ? config.getMaxBackoff() : backoff;
+    }
+}
@@ -0,0 +1,17 @@
+package io.digital.patterns.workflow.data;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class FormDataOutboxEntry {
+    private String id;
+    private String processInstanceId;
+    private String processDefinitionId;
+    private String executionId;
+    private String payload;
+    private int attempts;
+    private Instant nextAttempt;
+    private Instant created;
+}
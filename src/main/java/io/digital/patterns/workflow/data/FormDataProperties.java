@@ -0,0 +1,61 @@
+package io.digital.patterns.workflow.data;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "form-data")
+@Component
+@Data
+public class FormDataProperties {
+
+    private Outbox outbox = new Outbox();
+    private Indexer indexer = new Indexer();
+    private Upload upload = new Upload();
+
+    @Data
+    public static class Outbox {
+        private int threads = 2;
+        private Duration pollInterval = Duration.ofSeconds(1);
+        private int batchSize = 50;
+        /**
+         * Time a claimed entry is reserved for the node that claimed it. An entry is picked up again
+         * once the lease expires, for example when the node stopped while processing it.
+         */
+        private Duration lease = Duration.ofMinutes(5);
+        private int maxAttempts = 10;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Indexer {
+        private int bulkActions = 500;
+        private DataSize bulkSize = DataSize.ofMegabytes(5);
+        private Duration flushInterval = Duration.ofSeconds(1);
+        /**
+         * Bulk requests sent while the next batch is built. Adding to a full batch blocks while
+         * this many requests are in flight.
+         */
+        private int concurrentRequests = 1;
+        private Duration initialBackoff = Duration.ofMillis(100);
+        private int maxRetries = 3;
+        private Duration closeTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Upload {
+        /**
+         * Forms of at least this size are uploaded to S3 in parts.
+         */
+        private DataSize multipartThreshold = DataSize.ofMegabytes(16);
+        private DataSize partSize = DataSize.ofMegabytes(8);
+        /**
+         * Time a node may take to upload a form it has claimed before another node takes the claim over.
+         */
+        private Duration claimTimeout = Duration.ofMinutes(5);
+    }
+}
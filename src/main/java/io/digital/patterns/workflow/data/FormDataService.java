@@ -1,116 +1,152 @@
 package io.digital.patterns.workflow.data;
 
-import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
-import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.camunda.bpm.engine.RuntimeService;
 import org.camunda.bpm.engine.history.HistoricProcessInstance;
-import org.camunda.spin.Spin;
-import org.camunda.spin.json.SpinJsonNode;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.joda.time.DateTime;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.String.format;
-import static java.lang.String.valueOf;
 
 @Slf4j
 public class FormDataService {
-    private static final String FAILED_TO_CREATE_S3_RECORD = "FAILED_TO_CREATE_S3_RECORD";
+    private static final String APPLICATION_JSON = "application/json";
 
-    private final RuntimeService runtimeService;
     private final AmazonS3 amazonS3;
-    private final RestHighLevelClient elasticsearchClient;
-
-    public FormDataService(RuntimeService runtimeService, AmazonS3 amazonS3,
-                           RestHighLevelClient elasticsearchClient) {
-        this.runtimeService = runtimeService;
+    private final FormDataIndexer formDataIndexer;
+    private final FormSubmissionRepository formSubmissionRepository;
+    private final FormDataProperties.Upload upload;
+    private final TransferManager transferManager;
+    private final FormDataStringifier formDataStringifier = new FormDataStringifier();
+
+    public FormDataService(AmazonS3 amazonS3,
+                           FormDataIndexer formDataIndexer,
+                           FormSubmissionRepository formSubmissionRepository,
+                           FormDataProperties.Upload upload) {
         this.amazonS3 = amazonS3;
-        this.elasticsearchClient = elasticsearchClient;
+        this.formDataIndexer = formDataIndexer;
+        this.formSubmissionRepository = formSubmissionRepository;
+        this.upload = upload;
+        this.transferManager = TransferManagerBuilder.standard()
+                .withS3Client(amazonS3)
+                .withMultipartUploadThreshold(upload.getMultipartThreshold().toBytes())
+                .withMinimumUploadPartSize(upload.getPartSize().toBytes())
+                .build();
     }
 
-    public String save(String form,
-                       HistoricProcessInstance processInstance,
-                       String executionId, String product) {
+    /**
+     * Stores a form in S3 and adds it to the Elasticsearch index.
+     * <p>
+     * A form that has already been stored in S3 is not uploaded again but is still indexed, so a retry
+     * after a failed index request completes the save. A form that another node is storing fails the
+     * save so that it is retried later, as does a failed upload.
+     *
+     * @return completed with the key of the form once it has been indexed
+     */
+    public CompletableFuture<String> save(FormObject form,
+                                          HistoricProcessInstance processInstance,
+                                          String product) {
+
+        String businessKey = processInstance.getBusinessKey();
+        String submittedBy = form.getSubmittedBy();
+        String formName = form.getName();
+        String formVersionId = form.getFormVersionId();
+        String title = form.getTitle();
+        String submissionDate = form.getSubmissionDate();
+
+        final String key = key(businessKey, formName, submittedBy, submissionDate);
+
+        FormSubmission submission = new FormSubmission();
+        submission.setBucket(product);
+        submission.setKey(key);
+        submission.setBusinessKey(businessKey);
+        submission.setProcessInstanceId(processInstance.getId());
+        submission.setProcessDefinitionId(processInstance.getProcessDefinitionId());
+        submission.setName(formName);
+        submission.setTitle(title);
+        submission.setFormVersionId(formVersionId);
+        submission.setSubmittedBy(submittedBy);
+        submission.setSubmissionDate(submissionDate);
+
+        FormSubmissionRepository.Claim claim = formSubmissionRepository.claim(submission,
+                upload.getClaimTimeout());
+        if (claim == FormSubmissionRepository.Claim.IN_PROGRESS) {
+            throw new IllegalStateException(format("Form data '%s' is being stored by another node", key));
+        }
+        if (claim == FormSubmissionRepository.Claim.CLAIMED) {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType(APPLICATION_JSON);
+            metadata.setContentLength(form.getLength());
+            metadata.addUserMetadata("processinstanceid", processInstance.getId());
+            metadata.addUserMetadata("processdefinitionid", processInstance.getProcessDefinitionId());
+            metadata.addUserMetadata("formversionid", formVersionId);
+            metadata.addUserMetadata("name", formName);
+            metadata.addUserMetadata("title", title);
+            metadata.addUserMetadata("submittedby", submittedBy);
+            metadata.addUserMetadata("submissiondate", submissionDate);
+
+            PutObjectRequest request = new PutObjectRequest(product, key, form.newInputStream(), metadata);
+            try {
+                log.debug("Uploaded to S3 '{}'", putObject(request, form.getLength()));
+            } catch (RuntimeException e) {
+                formSubmissionRepository.release(submission);
+                throw e;
+            }
+            formSubmissionRepository.markStored(submission);
+        } else {
+            log.info("Key already exists...so not uploading to S3");
+        }
+
+        return upload(form,
+                key,
+                processInstance).thenApply(indexed -> key);
+    }
 
-        File scratchFile = null;
-        String formName = "";
+    /**
+     * Uploads with a single request, or with a multipart upload once the content reaches the
+     * multipart threshold.
+     *
+     * @return ETag of the object
+     */
+    private String putObject(PutObjectRequest request, long contentLength) {
+        if (contentLength < upload.getMultipartThreshold().toBytes()) {
+            return amazonS3.putObject(request).getETag();
+        }
+        log.info("Uploading '{}' bytes to S3 as multipart upload", contentLength);
         try {
-            String businessKey = processInstance.getBusinessKey();
-            SpinJsonNode json = Spin.JSON(form);
-            String submittedBy = json.jsonPath("$.form.submittedBy").stringValue();
-            formName = json.jsonPath("$.form.name").stringValue();
-            String formVersionId = json.jsonPath("$.form.formVersionId").stringValue();
-            String title = json.jsonPath("$.form.title").stringValue();
-            String submissionDate = json.jsonPath("$.form.submissionDate").stringValue();
-
-            final String key = key(businessKey, formName, submittedBy, submissionDate);
-
-            boolean dataExists = amazonS3.doesObjectExist(product, key);
-            if (!dataExists) {
-                scratchFile
-                        = File.createTempFile(UUID.randomUUID().toString(), ".json");
-                FileUtils.copyInputStreamToFile(IOUtils.toInputStream(form, "UTF-8"), scratchFile);
-
-                ObjectMetadata metadata = new ObjectMetadata();
-                metadata.addUserMetadata("processinstanceid", processInstance.getId());
-                metadata.addUserMetadata("processdefinitionid", processInstance.getProcessDefinitionId());
-                metadata.addUserMetadata("formversionid", formVersionId);
-                metadata.addUserMetadata("name", formName);
-                metadata.addUserMetadata("title", title);
-                metadata.addUserMetadata("submittedby", submittedBy);
-                metadata.addUserMetadata("submissiondate", submissionDate);
-
-                PutObjectRequest request = new PutObjectRequest(product, key, scratchFile);
-                request.setMetadata(metadata);
-                final PutObjectResult putObjectResult = amazonS3.putObject(request);
-                log.debug("Uploaded to S3 '{}'", putObjectResult.getETag());
-                upload(form,
-                        key,
-                        processInstance);
-                return key;
-            } else {
-                log.info("Key already exists...so not uploading");
-                return null;
-            }
-        } catch (IOException | AmazonServiceException e) {
-            log.error("Failed to upload to S3 ", e);
-            runtimeService.createIncident(
-                    FAILED_TO_CREATE_S3_RECORD,
-                    executionId,
-                    format("Failed to upload form data for %s", formName),
-                    e.getMessage()
-
-            );
-
-        } finally {
-             if (scratchFile != null && scratchFile.exists()) {
-                scratchFile.delete();
-            }
+            return transferManager.upload(request).waitForUploadResult().getETag();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(format("Interrupted while uploading '%s'", request.getKey()), e);
         }
-        return null;
     }
 
+    public void shutdown() {
+        transferManager.shutdownNow(false);
+    }
+
+    /**
+     * Sends index requests added by {@link #save} without waiting for the batch to fill up.
+     */
+    public void flush() {
+        formDataIndexer.flush();
+    }
 
-    public void upload(String form,
-                       String key,
-                       HistoricProcessInstance processInstance) {
+
+    public CompletableFuture<Void> upload(FormObject form,
+                                          String key,
+                                          HistoricProcessInstance processInstance) {
 
         log.info("Saving data to ES");
         String indexKey;
@@ -123,54 +159,26 @@ public class FormDataService {
         IndexRequest indexRequest = new IndexRequest(indexKey).id(key);
 
 
-        JSONObject indexSource = new JSONObject();
-        indexSource.put("businessKey", processInstance.getBusinessKey());
+        String timeStamp = DateTime.parse(form.getSubmissionDate()).toString("YYYYMMDD'T'HHmmss");
 
-        SpinJsonNode json = Spin.JSON(stringify(new JSONObject(form)).toString());
-        String submittedBy = json.jsonPath("$.form.submittedBy").stringValue();
-        String submissionDate = json.jsonPath("$.form.submissionDate").stringValue();
-        String formName = json.jsonPath("$.form.name").stringValue();
-        String timeStamp = DateTime.parse(submissionDate).toString("YYYYMMDD'T'HHmmss");
-
-        indexSource.put("submissionDate", timeStamp);
-        indexSource.put("submittedBy", submittedBy);
-        indexSource.put("formName", formName);
-        indexSource.put("data", json.toString());
-
-        indexRequest.source(indexSource.toString(), XContentType.JSON);
         try {
-
-            RequestOptions.Builder builder = RequestOptions.DEFAULT.toBuilder();
-            builder.addHeader("Content-Type", "application/json");
-            final IndexResponse index = elasticsearchClient.index(indexRequest, builder.build());
-            log.info("Document uploaded result response '{}'", index.getResult().getLowercase());
+            XContentBuilder indexSource = XContentFactory.jsonBuilder().startObject();
+            field(indexSource, "businessKey", processInstance.getBusinessKey());
+            field(indexSource, "submissionDate", timeStamp);
+            field(indexSource, "submittedBy", form.getSubmittedBy());
+            field(indexSource, "formName", form.getName());
+            field(indexSource, "data", formDataStringifier.stringify(form));
+            indexRequest.source(indexSource.endObject());
         } catch (IOException e) {
-            log.error("Failed to create a document in ES due to '{}'", e.getMessage());
-            throw new RuntimeException(e);
+            return CompletableFuture.failedFuture(e);
         }
+        return formDataIndexer.index(indexRequest);
     }
 
-    private JSONObject stringify(JSONObject o) {
-        for (String key : o.keySet()) {
-            Object json = o.get(key);
-            if (json instanceof JSONObject) {
-                stringify((JSONObject) json);
-            } else if (json instanceof JSONArray) {
-                JSONArray array = (JSONArray) json;
-
-                for (int i = 0; i < array.length(); i++) {
-                    Object aObj = array.get(i);
-                    if (aObj instanceof JSONObject) {
-                        stringify((JSONObject) aObj);
-                    } else {
-                        array.put(i, String.valueOf(aObj));
-                    }
-                }
-            } else {
-                o.put(key, valueOf(json));
-            }
+    private static void field(XContentBuilder builder, String name, String value) throws IOException {
+        if (value != null) {
+            builder.field(name, value);
         }
-        return o;
     }
 
     public static String key(String businessKey, String formName, String email, String submissionDate) {
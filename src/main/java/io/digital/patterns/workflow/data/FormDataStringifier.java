@@ -0,0 +1,73 @@
+package io.digital.patterns.workflow.data;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes the form JSON indexed in Elasticsearch, in which every value is a string. Objects are kept,
+ * values in objects and arrays are written as their JSON text and arrays nested directly in arrays
+ * are written as the JSON text of the whole array. The form is copied token by token in one pass.
+ */
+public class FormDataStringifier {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public String stringify(FormObject form) {
+        StringWriter writer = new StringWriter(form.getLength());
+        try (JsonParser parser = JSON_FACTORY.createParser(form.newInputStream());
+             JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Form data is not a JSON object");
+            }
+            copyObject(parser, generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read form data", e);
+        }
+        return writer.toString();
+    }
+
+    private void copyObject(JsonParser parser, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            generator.writeFieldName(parser.getCurrentName());
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT) {
+                copyObject(parser, generator);
+            } else if (value == JsonToken.START_ARRAY) {
+                copyArray(parser, generator);
+            } else {
+                generator.writeString(text(parser));
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void copyArray(JsonParser parser, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        JsonToken item;
+        while ((item = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (item == JsonToken.START_OBJECT) {
+                copyObject(parser, generator);
+            } else if (item == JsonToken.START_ARRAY) {
+                StringWriter nested = new StringWriter();
+                try (JsonGenerator nestedGenerator = JSON_FACTORY.createGenerator(nested)) {
+                    nestedGenerator.copyCurrentStructure(parser);
+                }
+                generator.writeString(nested.toString());
+            } else {
+                generator.writeString(text(parser));
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    private String text(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? "null" : parser.getText();
+    }
+}
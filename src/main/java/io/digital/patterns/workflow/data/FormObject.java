@@ -0,0 +1,59 @@
+package io.digital.patterns.workflow.data;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A form found in a variable by the {@link FormObjectSplitter}. Holds the values of the form's
+ * 'form' object together with the form JSON as it appears in the variable, without copying it.
+ */
+@Getter
+public class FormObject {
+
+    private final String name;
+    private final String title;
+    private final String formVersionId;
+    private final String submittedBy;
+    private final String submissionDate;
+
+    @Getter(AccessLevel.NONE)
+    private final byte[] source;
+    @Getter(AccessLevel.NONE)
+    private final int offset;
+    private final int length;
+
+    public FormObject(String name, String title, String formVersionId, String submittedBy,
+                      String submissionDate, byte[] source, int offset, int length) {
+        this.name = name;
+        this.title = title;
+        this.formVersionId = formVersionId;
+        this.submittedBy = submittedBy;
+        this.submissionDate = submissionDate;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return the UTF-8 encoded form JSON
+     */
+    public InputStream newInputStream() {
+        return new ByteArrayInputStream(source, offset, length);
+    }
+
+    /**
+     * @return the form JSON
+     */
+    public String asString() {
+        return new String(source, offset, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+}
@@ -1,40 +1,141 @@
 package io.digital.patterns.workflow.data;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Finds the forms in a JSON variable in a single streaming pass. An object is a form when it has a
+ * 'form' object. The root, the objects directly under the root and the objects in arrays under the
+ * root are checked, objects in arrays are searched the same way as the root. Forms inside an object
+ * that is not searched are not returned. The root is returned last.
+ */
 @Slf4j
 public class FormObjectSplitter {
 
-    public List<String> split(String rootJson) {
-        List<String> forms = new ArrayList<>();
-        JSONObject json = new JSONObject(rootJson);
-        for (Object key : json.keySet()) {
-            Object value = json.get(key.toString());
-            if (value instanceof JSONObject) {
-                JSONObject obj = (JSONObject) value;
-                if (obj.has("form")) {
-                    forms.add(obj.toString());
-                }
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String FORM = "form";
+
+    public List<FormObject> split(String rootJson) {
+        return split(rootJson.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public List<FormObject> split(byte[] rootJson) {
+        List<FormObject> forms = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(rootJson)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return forms;
             }
-            if (value instanceof JSONArray) {
-                JSONArray array = (JSONArray)value;
-                array.forEach(item -> {
-                    if (item instanceof JSONObject) {
-                        forms.addAll(split(item.toString()));
+            ScannedObject root = scan(parser, rootJson, forms, true);
+            if (root.isForm()) {
+                forms.add(root.toFormObject(rootJson));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read form data", e);
+        }
+        return forms;
+    }
+
+    /**
+     * Reads the object at the current START_OBJECT token up to its END_OBJECT token.
+     *
+     * @param search add the forms directly under this object and in its arrays
+     */
+    private ScannedObject scan(JsonParser parser, byte[] json, List<FormObject> forms,
+                               boolean search) throws IOException {
+        ScannedObject scanned = new ScannedObject(parser.getTokenLocation().getByteOffset());
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT) {
+                if (FORM.equals(field) || search) {
+                    ScannedObject child = scan(parser, json, forms, false);
+                    if (FORM.equals(field)) {
+                        scanned.form = child;
+                    }
+                    if (search && child.isForm()) {
+                        forms.add(child.toFormObject(json));
                     }
-                });
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (value == JsonToken.START_ARRAY) {
+                if (search) {
+                    scanArray(parser, json, forms);
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (value.isScalarValue()) {
+                scanned.setField(field, parser.getValueAsString());
             }
         }
+        scanned.end = parser.getCurrentLocation().getByteOffset();
+        return scanned;
+    }
 
-        if (json.keySet().contains("form")) {
-            forms.add(json.toString());
+    private void scanArray(JsonParser parser, byte[] json, List<FormObject> forms) throws IOException {
+        JsonToken item;
+        while ((item = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (item == JsonToken.START_OBJECT) {
+                ScannedObject element = scan(parser, json, forms, true);
+                if (element.isForm()) {
+                    forms.add(element.toFormObject(json));
+                }
+            } else {
+                parser.skipChildren();
+            }
         }
-        return forms;
     }
 
+    private static class ScannedObject {
+        private final long start;
+        private long end;
+        private ScannedObject form;
+        private String name;
+        private String title;
+        private String formVersionId;
+        private String submittedBy;
+        private String submissionDate;
+
+        ScannedObject(long start) {
+            this.start = start;
+        }
+
+        boolean isForm() {
+            return form != null;
+        }
+
+        void setField(String field, String value) {
+            switch (field) {
+                case "name":
+                    name = value;
+                    break;
+                case "title":
+                    title = value;
+                    break;
+                case "formVersionId":
+                    formVersionId = value;
+                    break;
+                case "submittedBy":
+                    submittedBy = value;
+                    break;
+                case "submissionDate":
+                    submissionDate = value;
+                    break;
+                default:
+            }
+        }
+
+        FormObject toFormObject(byte[] json) {
+            return new FormObject(form.name, form.title, form.formVersionId, form.submittedBy,
+                    form.submissionDate, json, Math.toIntExact(start), Math.toIntExact(end - start));
+        }
+    }
 }
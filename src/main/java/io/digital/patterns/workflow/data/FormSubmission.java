@@ -0,0 +1,21 @@
+package io.digital.patterns.workflow.data;
+
+import lombok.Data;
+
+/**
+ * Index entry for a form submission stored in S3. Holds the values that are otherwise
+ * only available as user metadata on the S3 object.
+ */
+@Data
+public class FormSubmission {
+    private String bucket;
+    private String key;
+    private String businessKey;
+    private String processInstanceId;
+    private String processDefinitionId;
+    private String name;
+    private String title;
+    private String formVersionId;
+    private String submittedBy;
+    private String submissionDate;
+}
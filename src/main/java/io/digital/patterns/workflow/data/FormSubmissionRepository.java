@@ -0,0 +1,217 @@
+package io.digital.patterns.workflow.data;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Keeps an index of the form submissions stored in S3 keyed by business key, so that case details
+ * can be built with one query rather than listing and inspecting every object in the case bucket.
+ * <p>
+ * The index also records which forms have been stored. A form is claimed before it is uploaded and
+ * marked as stored afterwards, so a form is only uploaded once even when several nodes save it.
+ */
+@Slf4j
+@Repository
+public class FormSubmissionRepository {
+
+    private static final String INSERT = "insert into form_submission (bucket, data_key, business_key, " +
+            "process_instance_id, process_definition_id, form_name, title, form_version_id, submitted_by, " +
+            "submission_date, created) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_CLAIM = "insert into form_submission (bucket, data_key, business_key, " +
+            "process_instance_id, process_definition_id, form_name, title, form_version_id, submitted_by, " +
+            "submission_date, created, state) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'PENDING')";
+
+    private static final String TAKE_OVER_CLAIM = "update form_submission set created = ? " +
+            "where bucket = ? and data_key = ? and state = 'PENDING' and created < ?";
+
+    private static final String FIND_STATE = "select state from form_submission where bucket = ? and data_key = ?";
+
+    private static final String MARK_STORED = "update form_submission set state = 'STORED' " +
+            "where bucket = ? and data_key = ?";
+
+    private static final String RELEASE_CLAIM = "delete from form_submission " +
+            "where bucket = ? and data_key = ? and state = 'PENDING'";
+
+    private static final String FIND_BY_BUSINESS_KEY = "select bucket, data_key, business_key, " +
+            "process_instance_id, process_definition_id, form_name, title, form_version_id, submitted_by, " +
+            "submission_date from form_submission where business_key = ? and bucket = ? and state = 'STORED' " +
+            "order by data_key";
+
+    private static final String INSERT_RECONCILED = "insert into form_submission_reconciled " +
+            "(bucket, business_key, created) values (?, ?, ?)";
+
+    private static final String COUNT_RECONCILED = "select count(*) from form_submission_reconciled " +
+            "where bucket = ? and business_key = ?";
+
+    private static final RowMapper<FormSubmission> ROW_MAPPER = (rs, rowNum) -> {
+        FormSubmission submission = new FormSubmission();
+        submission.setBucket(rs.getString("bucket"));
+        submission.setKey(rs.getString("data_key"));
+        submission.setBusinessKey(rs.getString("business_key"));
+        submission.setProcessInstanceId(rs.getString("process_instance_id"));
+        submission.setProcessDefinitionId(rs.getString("process_definition_id"));
+        submission.setName(rs.getString("form_name"));
+        submission.setTitle(rs.getString("title"));
+        submission.setFormVersionId(rs.getString("form_version_id"));
+        submission.setSubmittedBy(rs.getString("submitted_by"));
+        submission.setSubmissionDate(rs.getString("submission_date"));
+        return submission;
+    };
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public FormSubmissionRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // Writes happen after the engine transaction has completed, so they always need their own transaction
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void createSchema() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("db/form-submission.sql"));
+        transactionTemplate.executeWithoutResult(status -> populator.execute(dataSource));
+    }
+
+    /**
+     * Adds a submission to the index. Submissions that are already indexed are left unchanged.
+     *
+     * @param submission
+     */
+    public void save(FormSubmission submission) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(INSERT,
+                    submission.getBucket(),
+                    submission.getKey(),
+                    submission.getBusinessKey(),
+                    submission.getProcessInstanceId(),
+                    submission.getProcessDefinitionId(),
+                    submission.getName(),
+                    submission.getTitle(),
+                    submission.getFormVersionId(),
+                    submission.getSubmittedBy(),
+                    submission.getSubmissionDate(),
+                    Timestamp.from(Instant.now())));
+        } catch (DuplicateKeyException e) {
+            log.debug("Form submission '{}' already indexed", submission.getKey());
+        }
+    }
+
+    /**
+     * Claims a submission before it is uploaded. A claim that has not been marked as stored within the
+     * timeout, for example because the node holding it stopped, is taken over.
+     *
+     * @param submission
+     * @param timeout
+     * @return result of the claim
+     */
+    public Claim claim(FormSubmission submission, Duration timeout) {
+        Instant now = Instant.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(INSERT_CLAIM,
+                    submission.getBucket(),
+                    submission.getKey(),
+                    submission.getBusinessKey(),
+                    submission.getProcessInstanceId(),
+                    submission.getProcessDefinitionId(),
+                    submission.getName(),
+                    submission.getTitle(),
+                    submission.getFormVersionId(),
+                    submission.getSubmittedBy(),
+                    submission.getSubmissionDate(),
+                    Timestamp.from(now)));
+            return Claim.CLAIMED;
+        } catch (DuplicateKeyException e) {
+            Integer takenOver = transactionTemplate.execute(status -> jdbcTemplate.update(TAKE_OVER_CLAIM,
+                    Timestamp.from(now), submission.getBucket(), submission.getKey(),
+                    Timestamp.from(now.minus(timeout))));
+            if (takenOver != null && takenOver == 1) {
+                log.warn("Took over expired claim of form submission '{}'", submission.getKey());
+                return Claim.CLAIMED;
+            }
+            List<String> state = jdbcTemplate.queryForList(FIND_STATE, String.class,
+                    submission.getBucket(), submission.getKey());
+            return state.contains("STORED") ? Claim.STORED : Claim.IN_PROGRESS;
+        }
+    }
+
+    public void markStored(FormSubmission submission) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(MARK_STORED,
+                submission.getBucket(), submission.getKey()));
+    }
+
+    /**
+     * Releases a claim that could not be completed so the submission can be claimed again straight away.
+     *
+     * @param submission
+     */
+    public void release(FormSubmission submission) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(RELEASE_CLAIM,
+                submission.getBucket(), submission.getKey()));
+    }
+
+    public List<FormSubmission> findByBusinessKey(String bucket, String businessKey) {
+        return jdbcTemplate.query(FIND_BY_BUSINESS_KEY, ROW_MAPPER, businessKey, bucket);
+    }
+
+    /**
+     * @param bucket
+     * @param businessKey
+     * @return whether every submission stored in S3 for the business key has been indexed
+     */
+    public boolean isReconciled(String bucket, String businessKey) {
+        Integer count = jdbcTemplate.queryForObject(COUNT_RECONCILED, Integer.class, bucket, businessKey);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Records that every submission stored in S3 for the business key has been indexed. Submissions
+     * stored afterwards are indexed when they are stored.
+     *
+     * @param bucket
+     * @param businessKey
+     */
+    public void markReconciled(String bucket, String businessKey) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(INSERT_RECONCILED,
+                    bucket, businessKey, Timestamp.from(Instant.now())));
+        } catch (DuplicateKeyException e) {
+            log.debug("Form submissions of '{}' already reconciled", businessKey);
+        }
+    }
+
+    public enum Claim {
+        /**
+         * The submission has been claimed and can be uploaded.
+         */
+        CLAIMED,
+        /**
+         * The submission has already been stored.
+         */
+        STORED,
+        /**
+         * Another node holds the claim and is storing the submission.
+         */
+        IN_PROGRESS
+    }
+}
@@ -0,0 +1,65 @@
+package io.digital.patterns.workflow.data;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.digital.patterns.workflow.aws.AwsProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.model.bpmn.BpmnModelInstance;
+import org.camunda.bpm.model.bpmn.instance.camunda.CamundaProperty;
+
+import java.util.Optional;
+
+/**
+ * Resolves the bucket form data of a process definition is stored in. The bucket is derived from the
+ * camunda:property named 'product' in the BPMN model and falls back to the case bucket.
+ * <p>
+ * The product is read from the model once per process definition and kept in a bounded cache. Definition
+ * ids are unique per deployment so a redeployment results in new entries and entries of replaced
+ * definitions are evicted once the cache is full.
+ */
+@Slf4j
+public class ProductBucketResolver {
+
+    private static final String PRODUCT_PROPERTY = "product";
+    private static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private final String bucketNamePrefix;
+    private final AwsProperties awsProperties;
+    private final RepositoryService repositoryService;
+    private final Cache<String, Optional<String>> products;
+
+    public ProductBucketResolver(String bucketNamePrefix,
+                                 AwsProperties awsProperties,
+                                 RepositoryService repositoryService) {
+        this(bucketNamePrefix, awsProperties, repositoryService, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public ProductBucketResolver(String bucketNamePrefix,
+                                 AwsProperties awsProperties,
+                                 RepositoryService repositoryService,
+                                 long maximumSize) {
+        this.bucketNamePrefix = bucketNamePrefix;
+        this.awsProperties = awsProperties;
+        this.repositoryService = repositoryService;
+        this.products = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    public String resolve(String processDefinitionId) {
+        return products.get(processDefinitionId, this::loadProduct)
+                .map(product -> bucketNamePrefix + "-" + product)
+                .orElseGet(awsProperties::getCaseBucketName);
+    }
+
+    private Optional<String> loadProduct(String processDefinitionId) {
+        log.debug("Loading product of process definition '{}'", processDefinitionId);
+        BpmnModelInstance model = repositoryService.getBpmnModelInstance(processDefinitionId);
+        return model.getModelElementsByType(CamundaProperty.class)
+                .stream()
+                .filter(p -> p.getCamundaName().equalsIgnoreCase(PRODUCT_PROPERTY))
+                .findAny()
+                .map(CamundaProperty::getCamundaValue);
+    }
+}
@@ -1,53 +1,76 @@
 package io.digital.patterns.workflow.encrypt;
 
 import io.digital.patterns.workflow.SpringApplicationContext;
-import io.digitalpatterns.camunda.encryption.ProcessDefinitionEncryptionParser;
 import io.digitalpatterns.camunda.encryption.ProcessInstanceSpinVariableDecryptor;
 import io.digitalpatterns.camunda.encryption.ProcessInstanceSpinVariableEncryptor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.SerializationUtils;
-import org.camunda.bpm.engine.repository.ProcessDefinition;
 import org.camunda.bpm.engine.rest.dto.VariableValueDto;
 import org.camunda.bpm.engine.rest.spi.impl.AbstractProcessEngineAware;
 import org.camunda.bpm.engine.variable.Variables;
 import org.camunda.bpm.engine.variable.type.ValueType;
+import org.camunda.spin.Spin;
 
 import javax.crypto.SealedObject;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
-import javax.ws.rs.ext.Provider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
 
 import static org.camunda.bpm.engine.variable.type.SerializableValueType.VALUE_INFO_OBJECT_TYPE_NAME;
 import static org.camunda.bpm.engine.variable.type.SerializableValueType.VALUE_INFO_SERIALIZATION_DATA_FORMAT;
 
-@Provider
 @Slf4j
 public abstract class EncryptInterceptor extends
         AbstractProcessEngineAware implements ContainerRequestFilter {
 
-    protected final ProcessDefinitionEncryptionParser processDefinitionEncryptionParser;
+    private static final String PROCESS_DEFINITION_ID =
+            EncryptInterceptor.class.getName() + ".processDefinitionId";
+
+    protected final EncryptionFlagCache encryptionFlagCache;
     protected final ProcessInstanceSpinVariableEncryptor processInstanceSpinVariableEncryptor;
     protected final ProcessInstanceSpinVariableDecryptor processInstanceSpinVariableDecryptor;
+    protected final EnvelopeCipher envelopeCipher;
+    protected final EncryptionMetrics encryptionMetrics;
+    protected final VariableJsonRewriter variableJsonRewriter = new VariableJsonRewriter(this::encrypt);
 
     public EncryptInterceptor() {
-        processDefinitionEncryptionParser =
-                SpringApplicationContext.getBean(ProcessDefinitionEncryptionParser.class);
+        encryptionFlagCache =
+                SpringApplicationContext.getBean(EncryptionFlagCache.class);
         processInstanceSpinVariableEncryptor =
                 SpringApplicationContext.getBean(ProcessInstanceSpinVariableEncryptor.class);
         processInstanceSpinVariableDecryptor =
                 SpringApplicationContext.getBean(ProcessInstanceSpinVariableDecryptor.class);
+        envelopeCipher = SpringApplicationContext.getBean(EnvelopeCipher.class);
+        encryptionMetrics = SpringApplicationContext.getBean(EncryptionMetrics.class);
     }
 
     public abstract boolean shouldFilter(ContainerRequestContext requestContext);
 
-    public abstract ProcessDefinition processDefinition(ContainerRequestContext requestContext);
+    /**
+     * @return the id of the process definition the variables belong to, or null if it cannot be found
+     */
+    public abstract String processDefinitionId(ContainerRequestContext requestContext);
 
     public boolean shouldEncrypt(ContainerRequestContext requestContext) {
-        return processDefinitionEncryptionParser.shouldEncrypt(
-                processDefinition(requestContext), "encryptVariables"
-        );
+        return encryptionFlagCache.shouldEncrypt(resolveProcessDefinitionId(requestContext));
+    }
+
+    /**
+     * Resolves the process definition id once per request.
+     */
+    protected String resolveProcessDefinitionId(ContainerRequestContext requestContext) {
+        Object resolved = requestContext.getProperty(PROCESS_DEFINITION_ID);
+        if (resolved instanceof String) {
+            return (String) resolved;
+        }
+        String processDefinitionId = processDefinitionId(requestContext);
+        if (processDefinitionId != null) {
+            requestContext.setProperty(PROCESS_DEFINITION_ID, processDefinitionId);
+        }
+        return processDefinitionId;
     }
 
     @Override
@@ -63,11 +86,43 @@ public abstract class EncryptInterceptor extends
 
     protected abstract void doEncrypt(ContainerRequestContext requestContext) throws Exception;
 
+    /**
+     * Encrypts the json variables in the map held by the given field of the request body.
+     */
+    protected void encryptVariables(ContainerRequestContext requestContext, String field) throws IOException {
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        variableJsonRewriter.rewriteVariables(requestContext.getEntityStream(), rewritten, field);
+        requestContext.setEntityStream(new ByteArrayInputStream(rewritten.toByteArray()));
+    }
+
+    /**
+     * Encrypts the request body if it is a json variable.
+     */
+    protected void encryptVariable(ContainerRequestContext requestContext) throws IOException {
+        ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+        variableJsonRewriter.rewriteVariable(requestContext.getEntityStream(), rewritten);
+        requestContext.setEntityStream(new ByteArrayInputStream(rewritten.toByteArray()));
+    }
+
     protected void encrypt(VariableValueDto v) {
-        if (v.getType().equalsIgnoreCase("json")) {
-            SealedObject sealedObject = processInstanceSpinVariableEncryptor.encrypt(
-                    v.getValue()
+        if (!v.getType().equalsIgnoreCase("json")) {
+            return;
+        }
+        if (envelopeCipher.isEnabled()) {
+            Object value = v.getValue();
+            String json = value instanceof String ? (String) value : Spin.JSON(value).toString();
+            VariableEnvelope envelope = encryptionMetrics.encrypt(true)
+                    .record(() -> envelopeCipher.encrypt(json));
+            v.setValue(envelope.toBytes());
+            v.setValueInfo(
+                    Map.of(
+                            VALUE_INFO_OBJECT_TYPE_NAME, VariableEnvelope.class.getName(),
+                            VALUE_INFO_SERIALIZATION_DATA_FORMAT, VariableEnvelopeSerializer.DATA_FORMAT
+                    )
             );
+        } else {
+            SealedObject sealedObject = encryptionMetrics.encrypt(false)
+                    .record(() -> processInstanceSpinVariableEncryptor.encrypt(v.getValue()));
             v.setValue(SerializationUtils.serialize(sealedObject));
             v.setValueInfo(
                     Map.of(
@@ -76,7 +131,7 @@ public abstract class EncryptInterceptor extends
                             Variables.SerializationDataFormats.JAVA.getName()
                     )
             );
-            v.setType(ValueType.OBJECT.getName());
         }
+        v.setType(ValueType.OBJECT.getName());
     }
 }
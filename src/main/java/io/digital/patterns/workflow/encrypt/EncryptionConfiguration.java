@@ -1,8 +1,11 @@
 package io.digital.patterns.workflow.encrypt;
 
 import io.digitalpatterns.camunda.encryption.*;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.TaskService;
 import org.camunda.bpm.spring.boot.starter.rest.CamundaJerseyResourceConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -10,6 +13,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.annotation.PostConstruct;
+import javax.crypto.SecretKey;
+import java.util.HashMap;
+import java.util.Map;
 
 @Configuration
 @Slf4j
@@ -22,6 +28,12 @@ public class EncryptionConfiguration {
     @Value("${encryption.salt}")
     private String salt;
 
+    @Value("${encryption.decrypt.parallelism:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int decryptParallelism;
+
+    @Value("${encryption.decrypt.parallel-threshold:64}")
+    private int decryptParallelThreshold;
+
     private final CamundaJerseyResourceConfig jerseyResourceConfig;
 
     public EncryptionConfiguration(CamundaJerseyResourceConfig jerseyResourceConfig) {
@@ -29,34 +41,65 @@ public class EncryptionConfiguration {
     }
 
     @Bean
-    public ProcessInstanceSpinVariableDecryptor processInstanceSpinVariableDecryptor() {
-        return new DefaultProcessInstanceSpinVariableDecryptor(passPhrase, salt);
+    public SealedObjectVariableCipher sealedObjectVariableCipher() {
+        return new SealedObjectVariableCipher(passPhrase, salt);
     }
 
+
     @Bean
-    public ProcessInstanceSpinVariableEncryptor processInstanceSpinVariableEncryptor() {
-        return new DefaultProcessInstanceSpinVariableEncryptor(passPhrase, salt);
+    public ProcessDefinitionEncryptionParser processDefinitionEncryptionParser(RepositoryService repositoryService) {
+        return new ProcessDefinitionEncryptionParser(repositoryService);
     }
 
+    @Bean
+    public EncryptionFlagCache encryptionFlagCache(ProcessDefinitionEncryptionParser processDefinitionEncryptionParser,
+                                                   RepositoryService repositoryService) {
+        return new EncryptionFlagCache(processDefinitionEncryptionParser, repositoryService);
+    }
 
     @Bean
-    public ProcessDefinitionEncryptionParser processDefinitionEncryptionParser(RepositoryService repositoryService) {
-        return new ProcessDefinitionEncryptionParser(repositoryService);
+    public EnvelopeCipher envelopeCipher(EnvelopeProperties envelopeProperties) {
+        Map<String, SecretKey> keys = new HashMap<>();
+        envelopeProperties.getPreviousKeys().forEach((keyId, key) ->
+                keys.put(keyId, EnvelopeCipher.deriveKey(key.getPassPhrase(), key.getSalt())));
+        keys.put(envelopeProperties.getKeyId(), EnvelopeCipher.deriveKey(passPhrase, salt));
+        return new EnvelopeCipher(envelopeProperties.getKeyId(), keys, envelopeProperties.isEnabled());
+    }
+
+    @Bean
+    public EncryptionMetrics encryptionMetrics(MeterRegistry meterRegistry) {
+        return new EncryptionMetrics(meterRegistry);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ParallelDecryption parallelDecryption() {
+        return new ParallelDecryption(decryptParallelism, decryptParallelThreshold);
+    }
+
+    @Bean
+    public VariableEnvelopePlugin variableEnvelopePlugin(EnvelopeCipher envelopeCipher) {
+        return new VariableEnvelopePlugin(envelopeCipher);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "encryption.envelope.migrate", havingValue = "true")
+    public EnvelopeMigration envelopeMigration(RuntimeService runtimeService,
+                                               TaskService taskService,
+                                               EnvelopeCipher envelopeCipher,
+                                               EnvelopeProperties envelopeProperties) {
+        return new EnvelopeMigration(runtimeService, taskService, sealedObjectVariableCipher(),
+                envelopeCipher, envelopeProperties.getMigrationBatchSize());
     }
 
     @Bean
     public ProcessInstanceSpinVariableEncryptionPlugin plugin() {
-        return new ProcessInstanceSpinVariableEncryptionPlugin(processInstanceSpinVariableEncryptor(),
-                processInstanceSpinVariableDecryptor());
+        return new ProcessInstanceSpinVariableEncryptionPlugin(sealedObjectVariableCipher(),
+                sealedObjectVariableCipher());
     }
 
     @PostConstruct
     public void init() {
-        jerseyResourceConfig.register(StartProcessEncryptInterceptor.class);
-        jerseyResourceConfig.register(TaskEncryptInterceptor.class);
-        jerseyResourceConfig.register(VariableEncryptInterceptor.class);
-        jerseyResourceConfig.register(GetVariablesDecryptInterceptor.class);
-        jerseyResourceConfig.register(GetVariableInstanceDecryptInterceptor.class);
+        jerseyResourceConfig.register(EncryptionRoutingFilter.class);
     }
 
 }
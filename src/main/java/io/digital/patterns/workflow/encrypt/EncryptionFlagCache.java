@@ -0,0 +1,64 @@
+package io.digital.patterns.workflow.encrypt;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.digitalpatterns.camunda.encryption.ProcessDefinitionEncryptionParser;
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.repository.ProcessDefinition;
+
+/**
+ * Tells the encryption interceptors whether to encrypt the variables of a process definition, as set
+ * by the 'encryptVariables' property of its BPMN model.
+ * <p>
+ * The model of a deployed definition never changes, so the flag is parsed on the first request for a
+ * definition id and then served from memory. Unknown definition ids are not encrypted and not cached,
+ * so they are looked up again should the definition be deployed later.
+ */
+@Slf4j
+public class EncryptionFlagCache {
+
+    static final String ENCRYPT_VARIABLES = "encryptVariables";
+    private static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    private final ProcessDefinitionEncryptionParser processDefinitionEncryptionParser;
+    private final RepositoryService repositoryService;
+    private final Cache<String, Boolean> flags;
+
+    public EncryptionFlagCache(ProcessDefinitionEncryptionParser processDefinitionEncryptionParser,
+                               RepositoryService repositoryService) {
+        this(processDefinitionEncryptionParser, repositoryService, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public EncryptionFlagCache(ProcessDefinitionEncryptionParser processDefinitionEncryptionParser,
+                               RepositoryService repositoryService,
+                               long maximumSize) {
+        this.processDefinitionEncryptionParser = processDefinitionEncryptionParser;
+        this.repositoryService = repositoryService;
+        this.flags = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    public boolean shouldEncrypt(String processDefinitionId) {
+        if (processDefinitionId == null) {
+            return false;
+        }
+        return Boolean.TRUE.equals(flags.get(processDefinitionId, this::loadFlag));
+    }
+
+    /**
+     * @return the flag, or null when there is no process definition with the id
+     */
+    private Boolean loadFlag(String processDefinitionId) {
+        log.debug("Loading encryption flag of process definition '{}'", processDefinitionId);
+        ProcessDefinition processDefinition = repositoryService.createProcessDefinitionQuery()
+                .processDefinitionId(processDefinitionId)
+                .singleResult();
+        if (processDefinition == null) {
+            log.warn("No process definition with id '{}', variables are not encrypted", processDefinitionId);
+            return null;
+        }
+        return processDefinitionEncryptionParser.shouldEncrypt(processDefinition, ENCRYPT_VARIABLES);
+    }
+}
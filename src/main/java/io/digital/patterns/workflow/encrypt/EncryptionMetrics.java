@@ -0,0 +1,42 @@
+package io.digital.patterns.workflow.encrypt;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers for encrypting and decrypting variables in the REST API, tagged by the operation and by
+ * the format the variable is stored in.
+ */
+public class EncryptionMetrics {
+
+    static final String TIMER = "variables.encryption";
+    static final String ENVELOPE = "envelope";
+    static final String SEALED_OBJECT = "sealed-object";
+
+    private final Timer envelopeEncrypt;
+    private final Timer envelopeDecrypt;
+    private final Timer sealedObjectEncrypt;
+    private final Timer sealedObjectDecrypt;
+
+    public EncryptionMetrics(MeterRegistry meterRegistry) {
+        this.envelopeEncrypt = timer(meterRegistry, "encrypt", ENVELOPE);
+        this.envelopeDecrypt = timer(meterRegistry, "decrypt", ENVELOPE);
+        this.sealedObjectEncrypt = timer(meterRegistry, "encrypt", SEALED_OBJECT);
+        this.sealedObjectDecrypt = timer(meterRegistry, "decrypt", SEALED_OBJECT);
+    }
+
+    public Timer encrypt(boolean envelope) {
+        return envelope ? envelopeEncrypt : sealedObjectEncrypt;
+    }
+
+    public Timer decrypt(boolean envelope) {
+        return envelope ? envelopeDecrypt : sealedObjectDecrypt;
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String operation, String format) {
+        return Timer.builder(TIMER)
+                .tag("operation", operation)
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+}
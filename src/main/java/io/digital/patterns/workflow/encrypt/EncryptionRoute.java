@@ -0,0 +1,73 @@
+package io.digital.patterns.workflow.encrypt;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import java.util.regex.Pattern;
+
+/**
+ * The encrypt or decrypt handler a REST API request is routed to. A request is classified once
+ * with precompiled patterns and the route is kept as a request property for the response.
+ */
+public enum EncryptionRoute {
+
+    /**
+     * POST process-definition/..., encrypts the start variables and decrypts the returned variables
+     */
+    START_PROCESS,
+    /**
+     * POST task/{id}/complete, submit-form or resolve, encrypts the task variables
+     */
+    TASK,
+    /**
+     * POST or PUT (process-instance|task)/{id}/(variables|localVariables), encrypts the variables
+     */
+    VARIABLES,
+    /**
+     * GET of a path containing variables or localVariables, decrypts the returned variables
+     */
+    GET_VARIABLES,
+    /**
+     * variable-instance and variable-instance/{id}, decrypts the returned variable instances.
+     * variable-instance/count returns no variables and is not routed
+     */
+    VARIABLE_INSTANCE,
+    NONE;
+
+    static final String PROPERTY = EncryptionRoute.class.getName();
+
+    private static final Pattern TASK_PATTERN =
+            Pattern.compile("task/(.*?)/(complete|submit-form|resolve)");
+    private static final Pattern VARIABLES_PATTERN =
+            Pattern.compile("(process-instance|task)/(.*?)/(variables|localVariables)");
+    private static final Pattern VARIABLE_INSTANCE_PATTERN =
+            Pattern.compile("variable-instance(/(?!count$)[^/]+)?");
+
+    public static EncryptionRoute of(ContainerRequestContext requestContext) {
+        Object route = requestContext.getProperty(PROPERTY);
+        if (route instanceof EncryptionRoute) {
+            return (EncryptionRoute) route;
+        }
+        EncryptionRoute classified = classify(requestContext.getUriInfo().getPath(), requestContext.getMethod());
+        requestContext.setProperty(PROPERTY, classified);
+        return classified;
+    }
+
+    static EncryptionRoute classify(String path, String method) {
+        boolean post = "POST".equalsIgnoreCase(method);
+        if (post && path.startsWith("process-definition/")) {
+            return START_PROCESS;
+        }
+        if (post && TASK_PATTERN.matcher(path).matches()) {
+            return TASK;
+        }
+        if ((post || "PUT".equalsIgnoreCase(method)) && VARIABLES_PATTERN.matcher(path).matches()) {
+            return VARIABLES;
+        }
+        if ("GET".equalsIgnoreCase(method) && (path.contains("variables") || path.contains("localVariables"))) {
+            return GET_VARIABLES;
+        }
+        if (VARIABLE_INSTANCE_PATTERN.matcher(path).matches()) {
+            return VARIABLE_INSTANCE;
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,75 @@
+package io.digital.patterns.workflow.encrypt;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+
+/**
+ * The single filter registered for the REST API. It classifies each request once with
+ * {@link EncryptionRoute} and invokes only the encrypt or decrypt handler for that route.
+ */
+@Provider
+public class EncryptionRoutingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private final StartProcessEncryptInterceptor startProcessEncryptInterceptor;
+    private final TaskEncryptInterceptor taskEncryptInterceptor;
+    private final VariableEncryptInterceptor variableEncryptInterceptor;
+    private final GetVariablesDecryptInterceptor getVariablesDecryptInterceptor;
+    private final GetVariableInstanceDecryptInterceptor getVariableInstanceDecryptInterceptor;
+
+    public EncryptionRoutingFilter() {
+        this(new StartProcessEncryptInterceptor(), new TaskEncryptInterceptor(),
+                new VariableEncryptInterceptor(), new GetVariablesDecryptInterceptor(),
+                new GetVariableInstanceDecryptInterceptor());
+    }
+
+    EncryptionRoutingFilter(StartProcessEncryptInterceptor startProcessEncryptInterceptor,
+                            TaskEncryptInterceptor taskEncryptInterceptor,
+                            VariableEncryptInterceptor variableEncryptInterceptor,
+                            GetVariablesDecryptInterceptor getVariablesDecryptInterceptor,
+                            GetVariableInstanceDecryptInterceptor getVariableInstanceDecryptInterceptor) {
+        this.startProcessEncryptInterceptor = startProcessEncryptInterceptor;
+        this.taskEncryptInterceptor = taskEncryptInterceptor;
+        this.variableEncryptInterceptor = variableEncryptInterceptor;
+        this.getVariablesDecryptInterceptor = getVariablesDecryptInterceptor;
+        this.getVariableInstanceDecryptInterceptor = getVariableInstanceDecryptInterceptor;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        switch (EncryptionRoute.of(requestContext)) {
+            case START_PROCESS:
+                startProcessEncryptInterceptor.filter(requestContext);
+                break;
+            case TASK:
+                taskEncryptInterceptor.filter(requestContext);
+                break;
+            case VARIABLES:
+                variableEncryptInterceptor.filter(requestContext);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext,
+                       ContainerResponseContext responseContext) throws IOException {
+        switch (EncryptionRoute.of(requestContext)) {
+            case START_PROCESS:
+                startProcessEncryptInterceptor.filter(requestContext, responseContext);
+                break;
+            case GET_VARIABLES:
+                getVariablesDecryptInterceptor.filter(requestContext, responseContext);
+                break;
+            case VARIABLE_INSTANCE:
+                getVariableInstanceDecryptInterceptor.filter(requestContext, responseContext);
+                break;
+            default:
+                break;
+        }
+    }
+}
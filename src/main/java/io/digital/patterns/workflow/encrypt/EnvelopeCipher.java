@@ -0,0 +1,103 @@
+package io.digital.patterns.workflow.encrypt;
+
+import lombok.Getter;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+
+/**
+ * Encrypts json variable values into {@link VariableEnvelope}s with AES-GCM. Every envelope holds
+ * the id of the key it was written with. New envelopes are written with the current key and
+ * existing envelopes are read with the key of their id, so keys can be rotated without rewriting
+ * existing values as long as the previous keys stay configured.
+ * <p>
+ * Envelopes are only written when enabled, they are always read so that variables stay readable
+ * when the format is switched off again. A {@link Cipher} is looked up once per thread and
+ * initialised with the derived key and a new IV for every value.
+ */
+public class EnvelopeCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_LENGTH = 128;
+    private static final int KEY_LENGTH = 256;
+    private static final int ITERATIONS = 65536;
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    });
+
+    @Getter
+    private final boolean enabled;
+    private final String keyId;
+    private final SecretKey key;
+    private final Map<String, SecretKey> keys;
+    private final SecureRandom random = new SecureRandom();
+
+    public EnvelopeCipher(String keyId, String passPhrase, String salt, boolean enabled) {
+        this(keyId, Map.of(keyId, deriveKey(passPhrase, salt)), enabled);
+    }
+
+    /**
+     * @param keyId id of the key new envelopes are written with
+     * @param keys  keys by id, including the current key
+     */
+    public EnvelopeCipher(String keyId, Map<String, SecretKey> keys, boolean enabled) {
+        if (!keys.containsKey(keyId)) {
+            throw new IllegalArgumentException("No key configured for current key id '" + keyId + "'");
+        }
+        this.keyId = keyId;
+        this.key = keys.get(keyId);
+        this.keys = Map.copyOf(keys);
+        this.enabled = enabled;
+    }
+
+    public VariableEnvelope encrypt(String json) {
+        byte[] iv = new byte[VariableEnvelope.IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.updateAAD(VariableEnvelope.header(keyId));
+            return new VariableEnvelope(keyId, iv, cipher.doFinal(json.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt variable", e);
+        }
+    }
+
+    public String decrypt(VariableEnvelope envelope) {
+        SecretKey envelopeKey = keys.get(envelope.getKeyId());
+        if (envelopeKey == null) {
+            throw new IllegalStateException("No key configured for key id '" + envelope.getKeyId() + "'");
+        }
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, envelopeKey, new GCMParameterSpec(TAG_LENGTH, envelope.getIv()));
+            cipher.updateAAD(envelope.header());
+            return new String(cipher.doFinal(envelope.getCiphertext()), StandardCharsets.UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to decrypt variable", e);
+        }
+    }
+
+    public static SecretKey deriveKey(String passPhrase, String salt) {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(passPhrase.toCharArray(), salt.getBytes(StandardCharsets.UTF_8),
+                    ITERATIONS, KEY_LENGTH);
+            byte[] encoded = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(encoded, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive variable encryption key", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.digital.patterns.workflow.encrypt;
+
+import io.digitalpatterns.camunda.encryption.ProcessInstanceSpinVariableDecryptor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SerializationUtils;
+import org.camunda.bpm.engine.RuntimeService;
+import org.camunda.bpm.engine.TaskService;
+import org.camunda.bpm.engine.runtime.VariableInstance;
+import org.camunda.bpm.engine.variable.Variables;
+import org.camunda.bpm.engine.variable.value.ObjectValue;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import javax.crypto.SealedObject;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Rewrites the runtime variables that are still stored as Java serialized {@link SealedObject}s
+ * as {@link VariableEnvelope}s. Variables that are only read are never written again, so without
+ * this they would keep the old format for the life of the process instance.
+ * <p>
+ * Each variable is rewritten in its own command, so a variable that cannot be read is logged and
+ * skipped without stopping the migration. History is not rewritten.
+ */
+@Slf4j
+public class EnvelopeMigration {
+
+    private final RuntimeService runtimeService;
+    private final TaskService taskService;
+    private final ProcessInstanceSpinVariableDecryptor decryptor;
+    private final EnvelopeCipher envelopeCipher;
+    private final int batchSize;
+
+    public EnvelopeMigration(RuntimeService runtimeService,
+                             TaskService taskService,
+                             ProcessInstanceSpinVariableDecryptor decryptor,
+                             EnvelopeCipher envelopeCipher,
+                             int batchSize) {
+        this.runtimeService = runtimeService;
+        this.taskService = taskService;
+        this.decryptor = decryptor;
+        this.envelopeCipher = envelopeCipher;
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!envelopeCipher.isEnabled()) {
+            log.warn("Envelope migration requested but envelopes are not enabled");
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                int migrated = migrate();
+                log.info("Migrated '{}' encrypted variables to envelopes", migrated);
+            } catch (Exception e) {
+                log.error("Envelope migration failed", e);
+            }
+        }, "envelope-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the number of variables rewritten
+     */
+    public int migrate() {
+        int migrated = 0;
+        int first = 0;
+        List<VariableInstance> page;
+        do {
+            // migrated variables stay in the query, so the offset still moves over every row
+            page = runtimeService.createVariableInstanceQuery()
+                    .disableCustomObjectDeserialization()
+                    .listPage(first, batchSize);
+            for (VariableInstance variable : page) {
+                if (isSealedObject(variable.getTypedValue()) && migrate(variable)) {
+                    migrated++;
+                }
+            }
+            first += page.size();
+        } while (page.size() == batchSize);
+        return migrated;
+    }
+
+    private boolean migrate(VariableInstance variable) {
+        try {
+            ObjectValue sealed = (ObjectValue) variable.getTypedValue();
+            SealedObject object = SerializationUtils.deserialize(
+                    Base64.getDecoder().decode(sealed.getValueSerialized())
+            );
+            VariableEnvelope envelope = envelopeCipher.encrypt(decryptor.decrypt(object).toString());
+            ObjectValue value = Variables.objectValue(envelope)
+                    .serializationDataFormat(VariableEnvelopeSerializer.DATA_FORMAT)
+                    .create();
+            if (variable.getTaskId() != null) {
+                taskService.setVariableLocal(variable.getTaskId(), variable.getName(), value);
+            } else if (variable.getExecutionId() != null) {
+                runtimeService.setVariableLocal(variable.getExecutionId(), variable.getName(), value);
+            } else {
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Could not migrate variable '{}' of process instance '{}'",
+                    variable.getName(), variable.getProcessInstanceId(), e);
+            return false;
+        }
+    }
+
+    private static boolean isSealedObject(TypedValue value) {
+        return value instanceof ObjectValue
+                && SealedObject.class.getName().equals(((ObjectValue) value).getObjectTypeName());
+    }
+}
@@ -0,0 +1,38 @@
+package io.digital.patterns.workflow.encrypt;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "encryption.envelope")
+@Component
+@Data
+public class EnvelopeProperties {
+
+    private boolean enabled = false;
+    /**
+     * Id of the key derived from encryption.passPhrase and encryption.salt, new envelopes are
+     * written with this key.
+     */
+    private String keyId = "v1";
+    /**
+     * Keys that envelopes were written with before the key id was changed, by key id. They are only
+     * used to read existing envelopes.
+     */
+    private Map<String, Key> previousKeys = new HashMap<>();
+    /**
+     * Rewrites runtime variables still stored as sealed objects as envelopes once the application
+     * has started.
+     */
+    private boolean migrate = false;
+    private int migrationBatchSize = 500;
+
+    @Data
+    public static class Key {
+        private String passPhrase;
+        private String salt;
+    }
+}
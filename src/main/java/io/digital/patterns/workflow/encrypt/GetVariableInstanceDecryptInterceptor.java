@@ -1,16 +1,38 @@
 package io.digital.patterns.workflow.encrypt;
 
 import org.camunda.bpm.engine.rest.dto.runtime.VariableInstanceDto;
+import org.camunda.bpm.engine.variable.type.ValueType;
 
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.MultivaluedMap;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Decrypts the variable instances returned by the variable instance query and by the single
+ * variable instance resource. A query can opt out of decrypting every variable:
+ * <ul>
+ *     <li>{@code decrypt=lazy} omits the values of encrypted variables, they can be read through
+ *     the single variable instance resource. An omitted variable has the type {@code Null} and the
+ *     value info {@code {"omitted": true}}</li>
+ *     <li>{@code decryptNames=a,b} only decrypts the named variables and omits the values of the
+ *     other encrypted variables, as with {@code decrypt=lazy}</li>
+ * </ul>
+ */
 public class GetVariableInstanceDecryptInterceptor extends VariablesDecryptInterceptor {
 
+    static final String DECRYPT = "decrypt";
+    static final String LAZY = "lazy";
+    static final String DECRYPT_NAMES = "decryptNames";
+    static final String VALUE_INFO_OMITTED = "omitted";
+
     @Override
     public boolean shouldFilter(ContainerRequestContext requestContext) {
-        return requestContext.getUriInfo().getPath().equals("variable-instance");
+        return EncryptionRoute.of(requestContext) == EncryptionRoute.VARIABLE_INSTANCE;
     }
 
     @Override
@@ -21,11 +43,49 @@ public class GetVariableInstanceDecryptInterceptor extends VariablesDecryptInter
         Boolean deserializeValues = deserializeValues(requestContext);
         if (entity instanceof List) {
             List<VariableInstanceDto> variables = (List) entity;
-            variables.forEach(v -> decrypt(v, deserializeValues));
+            MultivaluedMap<String, String> queryParameters = requestContext.getUriInfo().getQueryParameters();
+            if (queryParameters != null && LAZY.equalsIgnoreCase(queryParameters.getFirst(DECRYPT))) {
+                omitEncryptedValues(variables);
+                return;
+            }
+            Set<String> names = queryParameters == null ? null : decryptNames(queryParameters.get(DECRYPT_NAMES));
+            if (names != null) {
+                Map<Boolean, List<VariableInstanceDto>> requested = variables.stream()
+                        .collect(Collectors.partitioningBy(variable -> names.contains(variable.getName())));
+                omitEncryptedValues(requested.get(false));
+                variables = requested.get(true);
+            }
+            decryptAll(variables, deserializeValues);
             return;
         }
         if (entity instanceof VariableInstanceDto) {
             decrypt((VariableInstanceDto) entity, deserializeValues);
         }
     }
+
+    /**
+     * The deserialized value of an encrypted variable is a {@link javax.crypto.SealedObject} or a
+     * {@link VariableEnvelope} that has no meaningful json form, so the value is left out. The type
+     * and value info of the encrypted value are replaced as well, so that the variable can not be
+     * mistaken for a serialized object or for a variable that is null.
+     */
+    private void omitEncryptedValues(List<VariableInstanceDto> variables) {
+        variables.stream().filter(VariablesDecryptInterceptor::isEncrypted)
+                .forEach(variable -> {
+                    variable.setValue(null);
+                    variable.setType(ValueType.NULL.getName());
+                    variable.setValueInfo(Map.of(VALUE_INFO_OMITTED, true));
+                });
+    }
+
+    private Set<String> decryptNames(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+    }
 }
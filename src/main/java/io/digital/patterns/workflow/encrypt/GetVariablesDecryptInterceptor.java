@@ -4,15 +4,14 @@ import org.camunda.bpm.engine.rest.dto.VariableValueDto;
 
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerResponseContext;
+import java.util.ArrayList;
 import java.util.Map;
 
 public class GetVariablesDecryptInterceptor extends VariablesDecryptInterceptor {
 
     @Override
     public boolean shouldFilter(ContainerRequestContext requestContext) {
-        return (requestContext.getUriInfo().getPath().contains("variables")
-                || requestContext.getUriInfo().getPath().contains("localVariables"))
-                && requestContext.getMethod().equalsIgnoreCase("GET");
+        return EncryptionRoute.of(requestContext) == EncryptionRoute.GET_VARIABLES;
     }
 
     @Override
@@ -23,7 +22,7 @@ public class GetVariablesDecryptInterceptor extends VariablesDecryptInterceptor
         if (response instanceof Map) {
             Map<String, VariableValueDto> variablesDtoMap =
                     (Map<String, VariableValueDto>) response;
-            variablesDtoMap.forEach((key, value) -> decrypt(value, deserializeValues));
+            decryptAll(new ArrayList<>(variablesDtoMap.values()), deserializeValues);
             return;
         }
         if (response instanceof VariableValueDto) {
@@ -0,0 +1,68 @@
+package io.digital.patterns.workflow.encrypt;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Decrypts the variables of a response. Lists up to the threshold are decrypted on the request
+ * thread, larger lists are split across a bounded fork join pool. Every variable is decrypted in
+ * place so the order of the response is kept.
+ */
+public class ParallelDecryption {
+
+    private final int threshold;
+    private final ForkJoinPool pool;
+
+    public ParallelDecryption(int parallelism, int threshold) {
+        this.threshold = Math.max(threshold, 1);
+        ClassLoader classLoader = getClass().getClassLoader();
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("variable-decrypt-" + thread.getPoolIndex());
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }, null, false);
+    }
+
+    public <T> void forEach(List<T> variables, Consumer<T> decrypt) {
+        if (variables.size() <= threshold) {
+            variables.forEach(decrypt);
+            return;
+        }
+        pool.invoke(new DecryptAction<>(variables, 0, variables.size(), decrypt));
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private class DecryptAction<T> extends RecursiveAction {
+        private final List<T> variables;
+        private final int from;
+        private final int to;
+        private final Consumer<T> decrypt;
+
+        DecryptAction(List<T> variables, int from, int to, Consumer<T> decrypt) {
+            this.variables = variables;
+            this.from = from;
+            this.to = to;
+            this.decrypt = decrypt;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                for (int i = from; i < to; i++) {
+                    decrypt.accept(variables.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecryptAction<>(variables, from, middle, decrypt),
+                    new DecryptAction<>(variables, middle, to, decrypt));
+        }
+    }
+}
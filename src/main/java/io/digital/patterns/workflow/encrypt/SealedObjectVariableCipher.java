@@ -0,0 +1,103 @@
+package io.digital.patterns.workflow.encrypt;
+
+import io.digitalpatterns.camunda.encryption.DefaultProcessInstanceSpinVariableDecryptor;
+import io.digitalpatterns.camunda.encryption.ProcessInstanceSpinVariableDecryptor;
+import io.digitalpatterns.camunda.encryption.ProcessInstanceSpinVariableEncryptor;
+import org.camunda.spin.Spin;
+import org.camunda.spin.json.SpinJsonNode;
+
+import javax.crypto.Cipher;
+import javax.crypto.SealedObject;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Seals json variable values as {@link SealedObject}s with AES-GCM. The key is derived once and a
+ * {@link Cipher} is looked up once per thread, where the library implementations derive the key
+ * for every value.
+ * <p>
+ * Sealed objects written by the library implementations are still read: anything this cipher did
+ * not seal, or cannot open, is handed to the library decryptor.
+ */
+public class SealedObjectVariableCipher implements ProcessInstanceSpinVariableEncryptor,
+        ProcessInstanceSpinVariableDecryptor {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_LENGTH = 128;
+    private static final int IV_LENGTH = 12;
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    });
+
+    private final SecretKey key;
+    private final ProcessInstanceSpinVariableDecryptor legacyDecryptor;
+    private final SecureRandom random = new SecureRandom();
+
+    public SealedObjectVariableCipher(String passPhrase, String salt) {
+        this.key = EnvelopeCipher.deriveKey(passPhrase, salt);
+        this.legacyDecryptor = new DefaultProcessInstanceSpinVariableDecryptor(passPhrase, salt);
+    }
+
+    @Override
+    public SealedObject encrypt(Object value) {
+        String json;
+        if (value instanceof Spin) {
+            json = value.toString();
+        } else if (value instanceof String) {
+            json = (String) value;
+        } else {
+            json = Spin.JSON(value).toString();
+        }
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            return new SealedObject(json, cipher);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Failed to encrypt variable", e);
+        }
+    }
+
+    @Override
+    public SpinJsonNode decrypt(SealedObject sealedObject) {
+        if (TRANSFORMATION.equals(sealedObject.getAlgorithm())) {
+            try {
+                Cipher cipher = CIPHERS.get();
+                cipher.init(Cipher.DECRYPT_MODE, key, GcmParameters.of(sealedObject));
+                return Spin.JSON(sealedObject.getObject(cipher));
+            } catch (GeneralSecurityException | IOException | ClassNotFoundException | ClassCastException e) {
+                // not sealed with this key, leave it to the library
+            }
+        }
+        return (SpinJsonNode) legacyDecryptor.decrypt(sealedObject);
+    }
+
+    /**
+     * Reads the IV of a sealed object, which {@link SealedObject} only exposes to subclasses.
+     */
+    private static final class GcmParameters extends SealedObject {
+
+        private GcmParameters(SealedObject sealedObject) {
+            super(sealedObject);
+        }
+
+        static GCMParameterSpec of(SealedObject sealedObject) throws GeneralSecurityException, IOException {
+            byte[] encoded = new GcmParameters(sealedObject).encodedParams;
+            if (encoded == null) {
+                throw new GeneralSecurityException("Sealed object has no parameters");
+            }
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("GCM");
+            parameters.init(encoded);
+            return parameters.getParameterSpec(GCMParameterSpec.class);
+        }
+    }
+}
@@ -1,11 +1,8 @@
 package io.digital.patterns.workflow.encrypt;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
 import org.camunda.bpm.engine.repository.ProcessDefinition;
 import org.camunda.bpm.engine.rest.dto.runtime.ProcessInstanceWithVariablesDto;
-import org.camunda.bpm.engine.rest.dto.runtime.StartProcessInstanceDto;
-import org.camunda.spin.Spin;
 
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerResponseContext;
@@ -21,43 +18,29 @@ public class StartProcessEncryptInterceptor extends EncryptInterceptor implement
 
     @Override
     public boolean shouldFilter(ContainerRequestContext requestContext) {
-        return requestContext.getUriInfo().getPath().startsWith("process-definition/")
-                && requestContext.getMethod().equalsIgnoreCase("POST");
+        return EncryptionRoute.of(requestContext) == EncryptionRoute.START_PROCESS;
     }
 
     @Override
-    public ProcessDefinition processDefinition(ContainerRequestContext requestContext) {
+    public String processDefinitionId(ContainerRequestContext requestContext) {
         MultivaluedMap<String, String> pathParameters = requestContext.getUriInfo().getPathParameters();
         String id = pathParameters.getFirst("id");
         String key = pathParameters.getFirst("key");
 
-        ProcessDefinition processDefinition;
         if (key == null) {
-            processDefinition = super.processEngine.getRepositoryService()
-                    .createProcessDefinitionQuery()
-                    .latestVersion()
-                    .active()
-                    .processDefinitionId(id).singleResult();
-        } else {
-            processDefinition = super.processEngine.getRepositoryService()
-                    .createProcessDefinitionQuery()
-                    .latestVersion()
-                    .active()
-                    .processDefinitionKey(key).singleResult();
+            return id;
         }
-        return processDefinition;
+        ProcessDefinition processDefinition = super.processEngine.getRepositoryService()
+                .createProcessDefinitionQuery()
+                .latestVersion()
+                .active()
+                .processDefinitionKey(key).singleResult();
+        return processDefinition == null ? null : processDefinition.getId();
     }
 
     @Override
     public void doEncrypt(ContainerRequestContext requestContext) throws Exception {
-        String body = IOUtils.toString(requestContext.getEntityStream());
-        StartProcessInstanceDto instanceDto = Spin.JSON(body).mapTo(StartProcessInstanceDto.class);
-        instanceDto.getVariables().forEach((k, v) -> {
-            encrypt(v);
-        });
-        requestContext.setEntityStream(
-                IOUtils.toInputStream(Spin.JSON(instanceDto).toString())
-        );
+        encryptVariables(requestContext, "variables");
     }
 
     @Override
@@ -69,7 +52,8 @@ public class StartProcessEncryptInterceptor extends EncryptInterceptor implement
                 ((ProcessInstanceWithVariablesDto)response)
                         .getVariables()
                         .forEach((k,value) ->
-                                decrypt(value, processInstanceSpinVariableDecryptor, false));
+                                decrypt(value, processInstanceSpinVariableDecryptor, envelopeCipher,
+                                        encryptionMetrics, false));
             }
 
         }
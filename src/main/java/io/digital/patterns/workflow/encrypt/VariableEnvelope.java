@@ -0,0 +1,78 @@
+package io.digital.patterns.workflow.encrypt;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An encrypted variable value, stored as a versioned binary envelope instead of a Java serialized
+ * {@link javax.crypto.SealedObject}:
+ * <pre>
+ * version (1 byte) | key id length (1 byte) | key id (UTF-8) | IV (12 bytes) | AES-GCM ciphertext and tag
+ * </pre>
+ */
+@Getter
+public class VariableEnvelope {
+
+    public static final byte VERSION = 1;
+    public static final int IV_LENGTH = 12;
+
+    private final String keyId;
+    private final byte[] iv;
+    private final byte[] ciphertext;
+
+    public VariableEnvelope(String keyId, byte[] iv, byte[] ciphertext) {
+        if (iv.length != IV_LENGTH) {
+            throw new IllegalArgumentException("Envelope IV must be " + IV_LENGTH + " bytes");
+        }
+        this.keyId = keyId;
+        this.iv = iv;
+        this.ciphertext = ciphertext;
+    }
+
+    /**
+     * @return the version and key id, authenticated together with the ciphertext
+     */
+    public byte[] header() {
+        return header(keyId);
+    }
+
+    static byte[] header(String keyId) {
+        byte[] key = keyId.getBytes(StandardCharsets.UTF_8);
+        if (key.length > 255) {
+            throw new IllegalArgumentException("Envelope key id must be at most 255 bytes");
+        }
+        byte[] header = new byte[2 + key.length];
+        header[0] = VERSION;
+        header[1] = (byte) key.length;
+        System.arraycopy(key, 0, header, 2, key.length);
+        return header;
+    }
+
+    public byte[] toBytes() {
+        byte[] header = header();
+        return ByteBuffer.allocate(header.length + iv.length + ciphertext.length)
+                .put(header)
+                .put(iv)
+                .put(ciphertext)
+                .array();
+    }
+
+    public static VariableEnvelope fromBytes(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported variable envelope version");
+        }
+        int keyLength = Byte.toUnsignedInt(bytes[1]);
+        int ivStart = 2 + keyLength;
+        int ciphertextStart = ivStart + IV_LENGTH;
+        if (bytes.length < ciphertextStart) {
+            throw new IllegalArgumentException("Variable envelope is truncated");
+        }
+        return new VariableEnvelope(
+                new String(bytes, 2, keyLength, StandardCharsets.UTF_8),
+                Arrays.copyOfRange(bytes, ivStart, ciphertextStart),
+                Arrays.copyOfRange(bytes, ciphertextStart, bytes.length));
+    }
+}
@@ -0,0 +1,30 @@
+package io.digital.patterns.workflow.encrypt;
+
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.variable.serializer.TypedValueSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registers the {@link VariableEnvelopeSerializer} with the engine.
+ */
+public class VariableEnvelopePlugin extends AbstractProcessEnginePlugin {
+
+    private final EnvelopeCipher envelopeCipher;
+
+    public VariableEnvelopePlugin(EnvelopeCipher envelopeCipher) {
+        this.envelopeCipher = envelopeCipher;
+    }
+
+    @Override
+    public void preInit(ProcessEngineConfigurationImpl processEngineConfiguration) {
+        List<TypedValueSerializer> serializers = processEngineConfiguration.getCustomPreVariableSerializers();
+        if (serializers == null) {
+            serializers = new ArrayList<>();
+            processEngineConfiguration.setCustomPreVariableSerializers(serializers);
+        }
+        serializers.add(new VariableEnvelopeSerializer(envelopeCipher));
+    }
+}
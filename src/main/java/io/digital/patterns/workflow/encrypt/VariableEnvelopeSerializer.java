@@ -0,0 +1,87 @@
+package io.digital.patterns.workflow.encrypt;
+
+import org.camunda.bpm.engine.impl.variable.serializer.AbstractObjectValueSerializer;
+import org.camunda.bpm.engine.variable.value.ObjectValue;
+import org.camunda.bpm.engine.variable.value.SerializableValue;
+import org.camunda.bpm.engine.variable.value.TypedValue;
+import org.camunda.spin.Spin;
+import org.camunda.spin.json.SpinJsonNode;
+
+/**
+ * Stores encrypted json variables as {@link VariableEnvelope}s in their own serialization data
+ * format, so encrypted variables do not need the Java serialization format.
+ * <p>
+ * The serialized value is always the envelope. The deserialized value is the decrypted json, so
+ * delegates, expressions and scripts read an encrypted variable like any other json variable. A
+ * value written in this format is either an envelope encrypted by the REST API or json that is
+ * encrypted here, for example when the engine stores a value it has read back. Json variables
+ * that do not ask for this format are left to the other serializers.
+ */
+public class VariableEnvelopeSerializer extends AbstractObjectValueSerializer {
+
+    public static final String NAME = "variable-envelope";
+    public static final String DATA_FORMAT = "application/x-variable-envelope";
+
+    private final EnvelopeCipher envelopeCipher;
+
+    public VariableEnvelopeSerializer(EnvelopeCipher envelopeCipher) {
+        super(DATA_FORMAT);
+        this.envelopeCipher = envelopeCipher;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected boolean isSerializationTextBased() {
+        return false;
+    }
+
+    @Override
+    protected String getTypeNameForDeserialized(Object deserializedObject) {
+        return VariableEnvelope.class.getName();
+    }
+
+    @Override
+    protected byte[] serializeToByteArray(Object deserializedObject) {
+        if (deserializedObject instanceof VariableEnvelope) {
+            return ((VariableEnvelope) deserializedObject).toBytes();
+        }
+        return envelopeCipher.encrypt(deserializedObject.toString()).toBytes();
+    }
+
+    @Override
+    protected Object deserializeFromByteArray(byte[] object, String objectTypeName) {
+        return Spin.JSON(envelopeCipher.decrypt(VariableEnvelope.fromBytes(object)));
+    }
+
+    @Override
+    protected boolean canSerializeValue(Object value) {
+        return value instanceof VariableEnvelope;
+    }
+
+    /**
+     * Also accepts json values, but only when they ask for this format, so that plain json
+     * variables are not encrypted.
+     */
+    @Override
+    protected boolean canWriteValue(TypedValue typedValue) {
+        if (typedValue instanceof SerializableValue
+                && ((SerializableValue) typedValue).isDeserialized()
+                && DATA_FORMAT.equals(((SerializableValue) typedValue).getSerializationDataFormat())
+                && typedValue.getValue() instanceof SpinJsonNode) {
+            return true;
+        }
+        return super.canWriteValue(typedValue);
+    }
+
+    /**
+     * Changes to the json read from an envelope are only stored when the variable is set again.
+     */
+    @Override
+    public boolean isMutableValue(ObjectValue typedValue) {
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+package io.digital.patterns.workflow.encrypt;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.camunda.bpm.engine.rest.dto.VariableValueDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Rewrites the variables in a REST request body as the tokens are copied from the request to the
+ * rewritten body. Only the variables of type json are read into a {@link VariableValueDto} and
+ * passed to the rewrite, all other tokens are copied one by one. The request is read in the
+ * encoding Jackson detects and written as UTF-8.
+ */
+public class VariableJsonRewriter {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String TYPE = "type";
+    private static final String JSON = "json";
+
+    private final Consumer<VariableValueDto> rewrite;
+
+    public VariableJsonRewriter(Consumer<VariableValueDto> rewrite) {
+        this.rewrite = rewrite;
+    }
+
+    /**
+     * Rewrites the variables in the map held by the given field of the root object, for example the
+     * 'variables' of a start or complete request.
+     */
+    public void rewriteVariables(InputStream body, OutputStream rewritten, String field) throws IOException {
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(body);
+             JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(rewritten, JsonEncoding.UTF8)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                copyRemaining(parser, generator);
+                return;
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                generator.writeFieldName(name);
+                JsonToken value = parser.nextToken();
+                if (field.equals(name) && value == JsonToken.START_OBJECT) {
+                    rewriteMap(parser, generator);
+                } else {
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Rewrites a body that is a single variable, for example the body of a PUT to a variable.
+     */
+    public void rewriteVariable(InputStream body, OutputStream rewritten) throws IOException {
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(body);
+             JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(rewritten, JsonEncoding.UTF8)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                copyRemaining(parser, generator);
+                return;
+            }
+            rewriteVariable(parser, generator);
+        }
+    }
+
+    private void rewriteMap(JsonParser parser, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            generator.writeFieldName(parser.getCurrentName());
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                rewriteVariable(parser, generator);
+            } else {
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Buffers the variable at the current START_OBJECT token as its type can follow its value.
+     */
+    private void rewriteVariable(JsonParser parser, JsonGenerator generator) throws IOException {
+        TokenBuffer variable = new TokenBuffer(parser);
+        variable.copyCurrentStructure(parser);
+        if (!isJson(variable)) {
+            variable.serialize(generator);
+            return;
+        }
+        VariableValueDto dto;
+        try (JsonParser variableParser = variable.asParser(OBJECT_MAPPER)) {
+            dto = OBJECT_MAPPER.readValue(variableParser, VariableValueDto.class);
+        }
+        rewrite.accept(dto);
+        OBJECT_MAPPER.writeValue(generator, dto);
+    }
+
+    private boolean isJson(TokenBuffer variable) throws IOException {
+        try (JsonParser parser = variable.asParser()) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (TYPE.equals(name)) {
+                    return value == JsonToken.VALUE_STRING && JSON.equalsIgnoreCase(parser.getText());
+                }
+                parser.skipChildren();
+            }
+            return false;
+        }
+    }
+
+    private void copyRemaining(JsonParser parser, JsonGenerator generator) throws IOException {
+        while (parser.currentToken() != null) {
+            generator.copyCurrentStructure(parser);
+            parser.nextToken();
+        }
+    }
+}
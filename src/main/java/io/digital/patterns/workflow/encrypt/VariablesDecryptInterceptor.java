@@ -12,26 +12,31 @@ import javax.crypto.SealedObject;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
-import javax.ws.rs.ext.Provider;
 import java.io.IOException;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.camunda.bpm.engine.variable.type.SerializableValueType.VALUE_INFO_OBJECT_TYPE_NAME;
 import static org.camunda.bpm.engine.variable.type.SerializableValueType.VALUE_INFO_SERIALIZATION_DATA_FORMAT;
 
-@Provider
 @Slf4j
 public abstract class VariablesDecryptInterceptor extends
         AbstractProcessEngineAware implements ContainerResponseFilter {
 
 
     protected final ProcessInstanceSpinVariableDecryptor processInstanceSpinVariableDecryptor;
+    protected final EnvelopeCipher envelopeCipher;
+    protected final EncryptionMetrics encryptionMetrics;
+    protected final ParallelDecryption parallelDecryption;
 
     public VariablesDecryptInterceptor() {
         processInstanceSpinVariableDecryptor =
                 SpringApplicationContext.getBean(ProcessInstanceSpinVariableDecryptor.class);
+        envelopeCipher = SpringApplicationContext.getBean(EnvelopeCipher.class);
+        encryptionMetrics = SpringApplicationContext.getBean(EncryptionMetrics.class);
+        parallelDecryption = SpringApplicationContext.getBean(ParallelDecryption.class);
     }
 
 
@@ -64,14 +69,58 @@ public abstract class VariablesDecryptInterceptor extends
     }
 
     protected void decrypt(VariableValueDto value, Boolean deserializeValues) {
-        decrypt(value, processInstanceSpinVariableDecryptor, deserializeValues);
+        decrypt(value, processInstanceSpinVariableDecryptor, envelopeCipher, encryptionMetrics, deserializeValues);
     }
 
+    protected void decryptAll(List<? extends VariableValueDto> values, Boolean deserializeValues) {
+        parallelDecryption.forEach(values, value -> decrypt(value, deserializeValues));
+    }
+
+    /**
+     * @return whether the variable is stored as a {@link VariableEnvelope} or a {@link SealedObject}
+     */
+    static boolean isEncrypted(VariableValueDto value) {
+        if (value.getValueInfo() == null) {
+            return false;
+        }
+        Object objectTypeName = value.getValueInfo().get(VALUE_INFO_OBJECT_TYPE_NAME);
+        return objectTypeName != null
+                && (objectTypeName.toString().equals(VariableEnvelope.class.getName())
+                || objectTypeName.toString().equals(SealedObject.class.getName()));
+    }
+
+    /**
+     * Replaces an encrypted variable with its json value. Variables written as a
+     * {@link VariableEnvelope} and variables written as a Java serialized {@link SealedObject}
+     * are both read.
+     */
     static void decrypt(VariableValueDto value,
                         ProcessInstanceSpinVariableDecryptor processInstanceSpinVariableDecryptor,
+                        EnvelopeCipher envelopeCipher,
+                        EncryptionMetrics encryptionMetrics,
                         Boolean deserializeValues) {
         Object objectTypeName = value.getValueInfo().get(VALUE_INFO_OBJECT_TYPE_NAME);
-        if (objectTypeName != null && objectTypeName.toString().equals(SealedObject.class.getName())) {
+        if (objectTypeName == null) {
+            return;
+        }
+        Spin decrypted;
+        if (objectTypeName.toString().equals(VariableEnvelope.class.getName())) {
+            if (value.getValue() instanceof Spin) {
+                // already decrypted by the engine serializer
+                decrypted = (Spin) value.getValue();
+            } else {
+                VariableEnvelope envelope;
+                if (value.getValue() instanceof String) {
+                    envelope = VariableEnvelope.fromBytes(
+                            Base64.getDecoder().decode(value.getValue().toString())
+                    );
+                } else {
+                    envelope = (VariableEnvelope) value.getValue();
+                }
+                String json = encryptionMetrics.decrypt(true).record(() -> envelopeCipher.decrypt(envelope));
+                decrypted = Spin.JSON(json);
+            }
+        } else if (objectTypeName.toString().equals(SealedObject.class.getName())) {
             SealedObject object;
             if (value.getValue() instanceof String) {
                 object = SerializationUtils.deserialize(
@@ -80,24 +129,26 @@ public abstract class VariablesDecryptInterceptor extends
             } else {
                 object = (SealedObject)value.getValue();
             }
-            Object toReturn;
-            Spin decrypted = processInstanceSpinVariableDecryptor.decrypt(object);
-            if (deserializeValues) {
-                toReturn = decrypted;
-                value.setValueInfo(
-                        new HashMap<>()
-                );
-            } else {
-               toReturn = decrypted.toString();
-                value.setValueInfo(
-                        Map.of(
-                                VALUE_INFO_SERIALIZATION_DATA_FORMAT, decrypted.getDataFormatName()
-                        )
-                );
-            }
-            value.setValue(toReturn);
-            value.setType("Json");
-
+            decrypted = encryptionMetrics.decrypt(false)
+                    .record(() -> processInstanceSpinVariableDecryptor.decrypt(object));
+        } else {
+            return;
+        }
+        Object toReturn;
+        if (deserializeValues) {
+            toReturn = decrypted;
+            value.setValueInfo(
+                    new HashMap<>()
+            );
+        } else {
+           toReturn = decrypted.toString();
+            value.setValueInfo(
+                    Map.of(
+                            VALUE_INFO_SERIALIZATION_DATA_FORMAT, decrypted.getDataFormatName()
+                    )
+            );
         }
+        value.setValue(toReturn);
+        value.setType("Json");
     }
 }
@@ -0,0 +1,52 @@
+package io.digital.patterns.workflow.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.camunda.bpm.engine.IdentityService;
+import org.camunda.bpm.engine.identity.Group;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Caches the groups a user is a member of. Group queries go through the Keycloak identity plugin
+ * to the Keycloak admin API, so the groups are loaded once per user and kept for a short time.
+ * Membership changes in Keycloak are picked up once the entry expires.
+ */
+@Slf4j
+@Component
+public class GroupMembershipCache {
+
+    private final IdentityService identityService;
+    private final LoadingCache<String, List<String>> groups;
+
+    public GroupMembershipCache(IdentityService identityService,
+                                @Value("${keycloak.groups.cache.ttl-seconds:300}") long ttlSeconds,
+                                @Value("${keycloak.groups.cache.maximum-size:10000}") long maximumSize) {
+        this.identityService = identityService;
+        this.groups = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maximumSize)
+                .build(this::loadGroups);
+    }
+
+    public List<String> getGroups(String userId) {
+        return groups.get(userId);
+    }
+
+    public void invalidate(String userId) {
+        groups.invalidate(userId);
+    }
+
+    private List<String> loadGroups(String userId) {
+        log.debug("Loading groups of user '{}'", userId);
+        return identityService.createGroupQuery().groupMember(userId).list()
+                .stream()
+                .map(Group::getId)
+                .collect(Collectors.toUnmodifiableList());
+    }
+}
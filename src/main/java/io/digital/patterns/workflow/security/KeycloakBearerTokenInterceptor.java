@@ -2,6 +2,7 @@ package io.digital.patterns.workflow.security;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.ClientHttpResponse;
@@ -22,6 +23,15 @@ public class KeycloakBearerTokenInterceptor implements ClientHttpRequestIntercep
     @Override
     public ClientHttpResponse intercept(HttpRequest request, byte[] body,
                                         ClientHttpRequestExecution execution) throws IOException {
+        String token = keycloakClient.bearerToken();
+        request.getHeaders().set("Authorization", format("Bearer %s", token));
+        ClientHttpResponse response = execution.execute(request, body);
+        if (response.getRawStatusCode() != HttpStatus.UNAUTHORIZED.value()) {
+            return response;
+        }
+        log.warn("Request to '{}' was unauthorized, retrying with a new token", request.getURI());
+        response.close();
+        keycloakClient.invalidate(token);
         request.getHeaders().set("Authorization", format("Bearer %s", keycloakClient.bearerToken()));
         return execution.execute(request, body);
     }
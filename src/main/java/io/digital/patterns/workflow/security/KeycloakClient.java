@@ -2,41 +2,137 @@ package io.digital.patterns.workflow.security;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.util.Optional.ofNullable;
 
+/**
+ * Gets client credentials tokens from Keycloak. A token is cached until shortly before it expires
+ * and is refreshed in the background once it is close to expiry, while the cached token is still
+ * returned. Concurrent callers share a single refresh.
+ */
+@Slf4j
 @Service
 public class KeycloakClient {
+    private static final Duration REFRESH_BEFORE_EXPIRY = Duration.ofSeconds(30);
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(5);
+
     private final URI authUrl;
     private final String clientId;
     private final String clientSecret;
+    private final Clock clock;
     private RestTemplate restTemplate;
 
+    private final ExecutorService refreshExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("keycloak-token-"));
+    private final AtomicReference<CompletableFuture<Token>> refreshing = new AtomicReference<>();
+    private volatile Token token;
+
+    @Autowired
     public KeycloakClient(@Value("${keycloak.auth.url}") final String authUrl,
                           @Value("${keycloak.realm}") final String authRealm,
                           @Value("${keycloak.client.id}") final String clientId,
                           @Value("${keycloak.client.secret}") String clientSecret) throws URISyntaxException {
+        this(authUrl, authRealm, clientId, clientSecret, Clock.systemUTC());
+    }
+
+    KeycloakClient(String authUrl, String authRealm, String clientId, String clientSecret,
+                   Clock clock) throws URISyntaxException {
         this.authUrl = new URI(authUrl + "/auth/realms/" + authRealm + "/protocol/openid-connect/token");
         this.clientId = clientId;
         this.clientSecret = clientSecret;
+        this.clock = clock;
         this.restTemplate = new RestTemplate();
     }
 
     public String bearerToken() {
+        Token current = token;
+        Instant now = clock.instant();
+        if (current != null && now.isBefore(current.expiresAt)) {
+            if (!now.isBefore(current.refreshAt)) {
+                refresh();
+            }
+            return current.value;
+        }
+        try {
+            return refresh().join().value;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the cached token if it is the given token, for example after it was rejected with a 401,
+     * so that the next call gets a new token.
+     *
+     * @param rejected
+     */
+    public void invalidate(String rejected) {
+        Token current = token;
+        if (current != null && current.value.equals(rejected)) {
+            token = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private CompletableFuture<Token> refresh() {
+        while (true) {
+            CompletableFuture<Token> inFlight = refreshing.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+            CompletableFuture<Token> refresh = new CompletableFuture<>();
+            if (refreshing.compareAndSet(null, refresh)) {
+                refreshExecutor.execute(() -> {
+                    try {
+                        Token fetched = fetchToken();
+                        token = fetched;
+                        refresh.complete(fetched);
+                    } catch (Throwable e) {
+                        log.error("Failed to get token from Keycloak '{}'", e.getMessage());
+                        refresh.completeExceptionally(e);
+                    } finally {
+                        refreshing.compareAndSet(refresh, null);
+                    }
+                });
+                return refresh;
+            }
+        }
+    }
+
+    private Token fetchToken() {
         final MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
         body.add("grant_type", "client_credentials");
 
@@ -45,12 +141,15 @@ public class KeycloakClient {
         headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
         headers.set("Authorization", authHeader());
 
+        Instant requestedAt = clock.instant();
         final ResponseEntity<KeycloakResult> result = restTemplate.postForEntity(authUrl,
                 new HttpEntity<>(body, headers),
                 KeycloakResult.class);
 
-        return ofNullable(result.getBody()).map(KeycloakResult::getAccessToken)
+        KeycloakResult keycloakResult = ofNullable(result.getBody())
+                .filter(r -> r.getAccessToken() != null)
                 .orElseThrow(() -> new RuntimeException("Failed to get token from Keyclaok"));
+        return new Token(keycloakResult.getAccessToken(), requestedAt, keycloakResult.getExpiresIn());
     }
 
 
@@ -60,10 +159,34 @@ public class KeycloakClient {
         return "Basic " + new String(encodedAuth);
     }
 
+    private static class Token {
+        private final String value;
+        private final Instant expiresAt;
+        private final Instant refreshAt;
+
+        /**
+         * A token without an expiry is not cached.
+         */
+        Token(String value, Instant requestedAt, Long expiresIn) {
+            this.value = value;
+            Duration lifetime = expiresIn == null ? Duration.ZERO : Duration.ofSeconds(expiresIn);
+            Duration skew = min(EXPIRY_SKEW, lifetime.dividedBy(10));
+            Duration refreshBefore = min(REFRESH_BEFORE_EXPIRY, lifetime.dividedBy(2));
+            this.expiresAt = requestedAt.plus(lifetime).minus(skew);
+            this.refreshAt = requestedAt.plus(lifetime).minus(refreshBefore);
+        }
+
+        private static Duration min(Duration first, Duration second) {
+            return first.compareTo(second) <= 0 ? first : second;
+        }
+    }
+
     @Data
     private static class KeycloakResult {
         @JsonProperty("access_token")
         private String accessToken;
+        @JsonProperty("expires_in")
+        private Long expiresIn;
     }
 
 }
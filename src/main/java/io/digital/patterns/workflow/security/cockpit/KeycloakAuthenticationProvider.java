@@ -1,7 +1,8 @@
 package io.digital.patterns.workflow.security.cockpit;
 
+import io.digital.patterns.workflow.SpringApplicationContext;
+import io.digital.patterns.workflow.security.GroupMembershipCache;
 import org.camunda.bpm.engine.ProcessEngine;
-import org.camunda.bpm.engine.identity.Group;
 import org.camunda.bpm.engine.rest.security.auth.AuthenticationResult;
 import org.camunda.bpm.engine.rest.security.auth.impl.ContainerBasedAuthenticationProvider;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -9,11 +10,18 @@ import org.springframework.security.oauth2.client.authentication.OAuth2Authentic
 import org.springframework.util.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
-import java.util.List;
-import java.util.stream.Collectors;
 
 public class KeycloakAuthenticationProvider extends ContainerBasedAuthenticationProvider {
 
+    private GroupMembershipCache groupMembershipCache;
+
+    public KeycloakAuthenticationProvider() {
+    }
+
+    KeycloakAuthenticationProvider(GroupMembershipCache groupMembershipCache) {
+        this.groupMembershipCache = groupMembershipCache;
+    }
+
     @Override
     public AuthenticationResult extractAuthenticatedUser(HttpServletRequest request, ProcessEngine engine) {
 
@@ -33,15 +41,16 @@ public class KeycloakAuthenticationProvider extends ContainerBasedAuthentication
         }
 
         AuthenticationResult authenticationResult = new AuthenticationResult(userId, true);
-        authenticationResult.setGroups(getUserGroups(userId, engine));
+        authenticationResult.setGroups(groupMembershipCache().getGroups(userId));
 
         return authenticationResult;
     }
 
-    private List<String> getUserGroups(String userId, ProcessEngine engine) {
-        return engine.getIdentityService().createGroupQuery().groupMember(userId).list()
-                .stream()
-                .map(Group::getId).collect(Collectors.toList());
+    private GroupMembershipCache groupMembershipCache() {
+        if (groupMembershipCache == null) {
+            groupMembershipCache = SpringApplicationContext.getBean(GroupMembershipCache.class);
+        }
+        return groupMembershipCache;
     }
 
-}
\ No newline at end of file
+}
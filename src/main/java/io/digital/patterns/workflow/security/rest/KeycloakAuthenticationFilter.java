@@ -1,8 +1,8 @@
 package io.digital.patterns.workflow.security.rest;
 
+import io.digital.patterns.workflow.security.GroupMembershipCache;
 import lombok.extern.slf4j.Slf4j;
 import org.camunda.bpm.engine.IdentityService;
-import org.camunda.bpm.engine.identity.Group;
 import org.slf4j.MDC;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -11,15 +11,16 @@ import org.springframework.security.oauth2.server.resource.authentication.JwtAut
 
 import javax.servlet.*;
 import java.io.IOException;
-import java.util.List;
-import java.util.stream.Collectors;
 
 @Slf4j
 public class KeycloakAuthenticationFilter implements Filter {
     private IdentityService identityService;
+    private GroupMembershipCache groupMembershipCache;
 
-    public KeycloakAuthenticationFilter(IdentityService identityService) {
+    public KeycloakAuthenticationFilter(IdentityService identityService,
+                                        GroupMembershipCache groupMembershipCache) {
         this.identityService = identityService;
+        this.groupMembershipCache = groupMembershipCache;
     }
 
     @Override
@@ -36,17 +37,11 @@ public class KeycloakAuthenticationFilter implements Filter {
             MDC.put("userId", userId);
         }
         try {
-            identityService.setAuthentication(userId, getUserGroups(userId));
+            identityService.setAuthentication(userId, groupMembershipCache.getGroups(userId));
             chain.doFilter(request, response);
         } finally {
             identityService.clearAuthentication();
             MDC.remove("userId");
         }
     }
-
-    private List<String> getUserGroups(String userId) {
-        return identityService.createGroupQuery().groupMember(userId).list()
-                .stream()
-                .map(Group::getId).collect(Collectors.toList());
-    }
 }
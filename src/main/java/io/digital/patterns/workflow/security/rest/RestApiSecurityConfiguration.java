@@ -1,5 +1,6 @@
 package io.digital.patterns.workflow.security.rest;
 
+import io.digital.patterns.workflow.security.GroupMembershipCache;
 import org.camunda.bpm.engine.IdentityService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -33,6 +34,7 @@ public class RestApiSecurityConfiguration extends WebSecurityConfigurerAdapter {
     private static final String ACTUATOR_METRICS = "/actuator/metrics";
     private final IdentityService identityService;
     private final KeycloakAuthenticationConverter keycloakAuthenticationConverter;
+    private final GroupMembershipCache groupMembershipCache;
 
     @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
     private String issuer;
@@ -41,9 +43,11 @@ public class RestApiSecurityConfiguration extends WebSecurityConfigurerAdapter {
     private List<String> bpmnUploadRoles;
 
     public RestApiSecurityConfiguration(IdentityService identityService,
-                                        KeycloakAuthenticationConverter keycloakAuthenticationConverter) {
+                                        KeycloakAuthenticationConverter keycloakAuthenticationConverter,
+                                        GroupMembershipCache groupMembershipCache) {
         this.identityService = identityService;
         this.keycloakAuthenticationConverter = keycloakAuthenticationConverter;
+        this.groupMembershipCache = groupMembershipCache;
     }
 
 
@@ -75,7 +79,7 @@ public class RestApiSecurityConfiguration extends WebSecurityConfigurerAdapter {
     @Bean
     public FilterRegistrationBean keycloakAuthenticationFilter(){
         FilterRegistrationBean filterRegistration = new FilterRegistrationBean();
-        filterRegistration.setFilter(new KeycloakAuthenticationFilter(identityService));
+        filterRegistration.setFilter(new KeycloakAuthenticationFilter(identityService, groupMembershipCache));
         filterRegistration.setOrder(102);
         filterRegistration.addUrlPatterns("/engine-rest/*", "/cases/*", "/webhook/*");
         return filterRegistration;
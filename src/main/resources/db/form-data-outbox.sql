@@ -0,0 +1,15 @@
+create table if not exists form_data_outbox
+(
+    id                    varchar(64)  not null,
+    process_instance_id   varchar(64)  not null,
+    process_definition_id varchar(255) not null,
+    execution_id          varchar(64),
+    payload               text         not null,
+    attempts              integer      not null,
+    next_attempt          timestamp    not null,
+    last_error            varchar(2000),
+    created               timestamp    not null,
+    primary key (id)
+);
+
+create index if not exists form_data_outbox_next_attempt on form_data_outbox (next_attempt);
@@ -0,0 +1,27 @@
+create table if not exists form_submission
+(
+    bucket                varchar(255)  not null,
+    data_key              varchar(1024) not null,
+    business_key          varchar(255)  not null,
+    process_instance_id   varchar(64),
+    process_definition_id varchar(255),
+    form_name             varchar(255),
+    title                 varchar(1024),
+    form_version_id       varchar(255),
+    submitted_by          varchar(255),
+    submission_date       varchar(64),
+    created               timestamp     not null,
+    primary key (bucket, data_key)
+);
+
+create index if not exists form_submission_business_key on form_submission (business_key, bucket);
+
+alter table form_submission add column if not exists state varchar(16) default 'STORED' not null;
+
+create table if not exists form_submission_reconciled
+(
+    bucket       varchar(255) not null,
+    business_key varchar(255) not null,
+    created      timestamp    not null,
+    primary key (bucket, business_key)
+);
@@ -0,0 +1,64 @@
+package io.digital.patterns.workflow.aws
+
+import com.amazonaws.services.s3.AmazonS3
+import com.amazonaws.services.s3.model.ListObjectsV2Request
+import com.amazonaws.services.s3.model.ListObjectsV2Result
+import com.amazonaws.services.s3.model.S3ObjectSummary
+import spock.lang.Specification
+
+class PagedObjectListingSpec extends Specification {
+
+    AmazonS3 amazonS3 = Mock()
+
+    def 'can follow continuation tokens'() {
+        given: 'a listing split over two pages'
+        def firstPage = page((1..1000), true, "token")
+        def secondPage = page((1001..1200), false, null)
+
+        when: 'all objects are iterated'
+        def keys = new PagedObjectListing(amazonS3, "casedata", "businessKey/").collect { it.key }
+
+        then: 'both pages are requested'
+        1 * amazonS3.listObjectsV2({ ListObjectsV2Request r -> r.continuationToken == null && r.prefix == "businessKey/" }) >> firstPage
+        1 * amazonS3.listObjectsV2({ ListObjectsV2Request r -> r.continuationToken == "token" }) >> secondPage
+
+        and: 'every object is returned'
+        keys.size() == 1200
+        keys.first() == "businessKey/1.json"
+        keys.last() == "businessKey/1200.json"
+    }
+
+    def 'only requests pages as they are reached'() {
+        given: 'a truncated first page'
+        def firstPage = page((1..1000), true, "token")
+
+        when: 'the first object is read'
+        def first = new PagedObjectListing(amazonS3, "casedata", "businessKey/").stream().findFirst()
+
+        then: 'only one page is requested'
+        1 * amazonS3.listObjectsV2(_) >> firstPage
+        first.get().key == "businessKey/1.json"
+    }
+
+    def 'can iterate an empty listing'() {
+        when: 'objects are iterated'
+        def keys = new PagedObjectListing(amazonS3, "casedata", "businessKey/").collect { it.key }
+
+        then: 'nothing is returned'
+        1 * amazonS3.listObjectsV2(_) >> page([], false, null)
+        keys.isEmpty()
+    }
+
+    private static ListObjectsV2Result page(Iterable<Integer> ids, boolean truncated, String nextToken) {
+        def result = new ListObjectsV2Result()
+        ids.each {
+            def summary = new S3ObjectSummary()
+            summary.setBucketName("casedata")
+            summary.setKey("businessKey/${it}.json")
+            result.getObjectSummaries().add(summary)
+        }
+        result.setTruncated(truncated)
+        result.setNextContinuationToken(nextToken)
+        return result
+    }
+}
@@ -5,10 +5,17 @@ import com.amazonaws.services.s3.AmazonS3ClientBuilder
 import com.amazonaws.services.s3.model.ObjectMetadata
 import com.amazonaws.services.s3.model.PutObjectRequest
 import io.digital.patterns.workflow.aws.AwsProperties
+import io.digital.patterns.workflow.data.FormDataIndexer
+import io.digital.patterns.workflow.data.FormDataOutbox
+import io.digital.patterns.workflow.data.FormDataOutboxDispatcher
+import io.digital.patterns.workflow.data.FormDataProperties
 import io.digital.patterns.workflow.data.FormDataService
 import io.digital.patterns.workflow.data.FormDataVariablePersistListener
 import io.digital.patterns.workflow.data.FormObjectSplitter
+import io.digital.patterns.workflow.data.FormSubmissionRepository
+import io.digital.patterns.workflow.data.ProductBucketResolver
 import io.digital.patterns.workflow.security.cockpit.KeycloakLogoutHandler
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.apache.http.HttpHost
 import org.camunda.bpm.engine.AuthorizationService
 import org.camunda.bpm.engine.HistoryService
@@ -30,7 +37,6 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest
 import org.springframework.core.io.ClassPathResource
 import org.springframework.http.MediaType
 import org.springframework.jdbc.datasource.DataSourceTransactionManager
-import org.springframework.retry.support.RetryTemplate
 import org.springframework.security.core.authority.SimpleGrantedAuthority
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository
 import org.springframework.security.oauth2.jwt.JwtDecoder
@@ -48,6 +54,7 @@ import org.testcontainers.spock.Testcontainers
 import spock.lang.Shared
 import spock.lang.Specification
 
+import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 
 import static org.camunda.spin.Spin.S
@@ -126,36 +133,57 @@ class CaseApiControllerSpec extends Specification {
             .enablePathStyleAccess()
             .build()
 
+    FormSubmissionRepository formSubmissionRepository =
+            new FormSubmissionRepository(processEngineRule.processEngineConfiguration.dataSource)
+
+    FormDataOutbox formDataOutbox = new FormDataOutbox(processEngineRule.processEngineConfiguration.dataSource)
+
+    FormDataOutboxDispatcher formDataOutboxDispatcher
+
+    FormDataIndexer formDataIndexer
+
     @SpringBean
     CasesApplicationService applicationService =
             new CasesApplicationService(historyService,
                     amazonS3,
                     elasticsearchClient,
                     awsProperties, caseService,
-                    authorizationService)
+                    new CaseProperties(),
+                    Executors.newFixedThreadPool(2),
+                    Executors.newFixedThreadPool(2),
+                    formSubmissionRepository,
+                    new CaseRepository(processEngineRule.processEngineConfiguration as ProcessEngineConfigurationImpl),
+                    identityService,
+                    new SimpleMeterRegistry(),
+                    new CaseAuthorizationEvaluator())
 
     def setup() {
-               mvc = MockMvcBuilders
+        formSubmissionRepository.createSchema()
+
+        mvc = MockMvcBuilders
                 .webAppContextSetup(context)
                 .apply(springSecurity())
                 .build()
 
+        formDataIndexer = new FormDataIndexer(elasticsearchClient, new FormDataProperties())
         def formDataService = new FormDataService(
-                processEngineRule.runtimeService,
                 amazonS3,
-                elasticsearchClient)
+                formDataIndexer,
+                formSubmissionRepository,
+                new FormDataProperties.Upload())
+        formDataOutbox.createSchema()
+        formDataOutboxDispatcher = new FormDataOutboxDispatcher(
+                formDataOutbox,
+                new FormDataProperties.Outbox(),
+                processEngineRule.historyService,
+                processEngineRule.runtimeService,
+                new FormObjectSplitter(),
+                new ProductBucketResolver("", awsProperties, processEngineRule.repositoryService),
+                formDataService)
         ((ProcessEngineConfigurationImpl)processEngineRule.getProcessEngineConfiguration())
                 .setHistoryEventHandler(
                         new CompositeDbHistoryEventHandler(
-                                new FormDataVariablePersistListener(
-                                        "",
-                                        awsProperties,
-                                        formDataService,
-                                        processEngineRule.repositoryService,
-                                        processEngineRule.historyService,
-                                        new FormObjectSplitter(),
-                                        new RetryTemplate()
-                                )
+                                new FormDataVariablePersistListener(formDataOutbox, formDataOutboxDispatcher)
                         )
                 )
 
@@ -168,7 +196,7 @@ class CaseApiControllerSpec extends Specification {
     }
 
     def cleanup() {
-
+        formDataIndexer.close()
     }
 
     @WithMockUser(username = 'test')
@@ -237,6 +265,9 @@ class CaseApiControllerSpec extends Specification {
             }
         })
 
+        and: 'the form data outbox is dispatched'
+        formDataOutboxDispatcher.dispatch()
+
         TimeUnit.SECONDS.sleep(5)
 
         when: 'request is made'
@@ -268,6 +299,28 @@ class CaseApiControllerSpec extends Specification {
 
     }
 
+    def 'can stream submission data'() {
+        given: 'data is stored'
+        amazonS3.createBucket("casebucket")
+        amazonS3.putObject(new PutObjectRequest("casebucket", "streamBusinessKey/formA/xx1@x.com-20200128T083155.json",
+                new ClassPathResource("data.json").getInputStream(), new ObjectMetadata()))
+        amazonS3.putObject(new PutObjectRequest("casebucket", "streamBusinessKey/formB/xx1@x.com-20200128T083156.json",
+                new ClassPathResource("data.json").getInputStream(), new ObjectMetadata()))
+
+        when: 'a call to stream submission data is made'
+        def result = mvc.perform(MockMvcRequestBuilders.get('/cases/streamBusinessKey/submissions')
+                .with(jwt().authorities([new SimpleGrantedAuthority('test')])))
+                .andReturn().getResponse()
+
+        then: 'result is successful'
+        result.getStatus() == 200
+
+        and: 'each submission is on its own line'
+        def lines = result.getContentAsString().readLines()
+        lines.size() == 2
+        lines.every { S(it).prop("businessKey").stringValue() == "businessKey" }
+    }
+
     def 'can get case details'() {
         given: 'A process definition with a message is created'
         def businessKey = "newBusinessKey"
@@ -342,6 +395,10 @@ class CaseApiControllerSpec extends Specification {
 
         then: 'result is successful'
         result.andReturn().getResponse().getStatus() == 200
+
+        and: 'user task metrics are returned'
+        result.andExpect(jsonPath('$.metrics.noOfCompletedUserTasks', Matchers.is(1)))
+        result.andExpect(jsonPath('$.metrics.noOfOpenUserTasks', Matchers.is(0)))
     }
 
 }
@@ -0,0 +1,98 @@
+package io.digital.patterns.workflow.cases
+
+import org.camunda.bpm.engine.authorization.Authorization
+import org.camunda.bpm.engine.authorization.Permissions
+import org.camunda.bpm.engine.authorization.Resources
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl
+import org.camunda.bpm.engine.test.ProcessEngineRule
+import org.camunda.bpm.model.bpmn.Bpmn
+import org.junit.Rule
+import spock.lang.Specification
+
+class CaseRepositorySpec extends Specification {
+
+    @Rule
+    ProcessEngineRule engineRule = new ProcessEngineRule()
+
+    CaseRepository caseRepository
+
+    def setup() {
+        caseRepository = new CaseRepository(engineRule.processEngineConfiguration as ProcessEngineConfigurationImpl)
+    }
+
+    def cleanup() {
+        engineRule.authorizationService.createAuthorizationQuery().list().each {
+            engineRule.authorizationService.deleteAuthorization(it.id)
+        }
+    }
+
+    def authorize(String processInstanceId, String userId, String groupId) {
+        def authorization = engineRule.authorizationService.createNewAuthorization(Authorization.AUTH_TYPE_GRANT)
+        authorization.setResource(Resources.PROCESS_INSTANCE)
+        authorization.setResourceId(processInstanceId)
+        authorization.setUserId(userId)
+        authorization.setGroupId(groupId)
+        authorization.addPermission(Permissions.READ)
+        engineRule.authorizationService.saveAuthorization(authorization)
+    }
+
+    def 'loads process instance authorizations through the engine'() {
+        given: 'authorizations for two process instances'
+        authorize('instanceA', 'user@x.com', null)
+        authorize('instanceA', null, 'role')
+        authorize('instanceB', null, 'otherRole')
+
+        and: 'an authorization for another resource'
+        def other = engineRule.authorizationService.createNewAuthorization(Authorization.AUTH_TYPE_GRANT)
+        other.setResource(Resources.TASK)
+        other.setResourceId('instanceA')
+        other.setUserId('task@x.com')
+        other.addPermission(Permissions.READ)
+        engineRule.authorizationService.saveAuthorization(other)
+
+        when: 'the authorizations are loaded'
+        def authorizations = caseRepository.findAuthorizations(['instanceA', 'instanceB', 'instanceC'])
+
+        then: 'users and groups are grouped by process instance'
+        authorizations.keySet() == ['instanceA', 'instanceB'] as Set
+        authorizations.instanceA.userIds == ['user@x.com'] as Set
+        authorizations.instanceA.groupIds == ['role'] as Set
+        authorizations.instanceB.userIds.isEmpty()
+        authorizations.instanceB.groupIds == ['otherRole'] as Set
+    }
+
+    def 'loads authorizations for more process instances than fit in one query'() {
+        given: 'an authorization on the last of many process instances'
+        def ids = (0..<1200).collect { "instance${it}".toString() }
+        authorize(ids.last(), 'user@x.com', null)
+
+        expect:
+        caseRepository.findAuthorizations(ids).keySet() == [ids.last()] as Set
+    }
+
+    def 'counts the user tasks of process instances through the engine'() {
+        given: 'process instances with user tasks'
+        engineRule.repositoryService.createDeployment()
+                .addModelInstance("tasks.bpmn", Bpmn.createExecutableProcess("tasks")
+                        .startEvent().userTask("first").userTask("second").endEvent().done())
+                .deploy()
+        def first = engineRule.runtimeService.startProcessInstanceByKey("tasks")
+        def second = engineRule.runtimeService.startProcessInstanceByKey("tasks")
+        def other = engineRule.runtimeService.startProcessInstanceByKey("tasks")
+
+        and: 'the first task of one instance is completed'
+        engineRule.taskService.complete(engineRule.taskService.createTaskQuery()
+                .processInstanceId(first.id).singleResult().id)
+
+        when: 'the user tasks of two instances are counted'
+        def counts = caseRepository.countUserTasks([first.id, second.id])
+
+        then: 'the totals cover both instances only'
+        counts.open == 2
+        counts.completed == 1
+
+        and: 'instances without user tasks count nothing'
+        caseRepository.countUserTasks(['unknown']).open == 0
+        caseRepository.countUserTasks(['unknown']).completed == 0
+    }
+}
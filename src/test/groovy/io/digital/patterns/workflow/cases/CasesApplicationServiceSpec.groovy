@@ -7,15 +7,29 @@ import com.amazonaws.services.s3.AmazonS3ClientBuilder
 import com.amazonaws.services.s3.model.ObjectMetadata
 import com.amazonaws.services.s3.model.PutObjectRequest
 import io.digital.patterns.workflow.aws.AwsProperties
-import org.camunda.bpm.engine.AuthorizationService
+import io.digital.patterns.workflow.data.FormSubmission
+import io.digital.patterns.workflow.data.FormSubmissionRepository
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.camunda.bpm.engine.HistoryService
+import org.camunda.bpm.engine.IdentityService
+import org.camunda.bpm.engine.history.HistoricProcessInstance
+import org.camunda.bpm.engine.history.HistoricProcessInstanceQuery
+import org.camunda.bpm.engine.impl.identity.Authentication
+import org.camunda.spin.json.SpinJsonNode
 import org.elasticsearch.client.RestHighLevelClient
 import org.springframework.core.io.ClassPathResource
+import org.springframework.security.authentication.TestingAuthenticationToken
+import org.springframework.security.core.context.SecurityContextHolder
 import org.testcontainers.containers.localstack.LocalStackContainer
 import org.testcontainers.spock.Testcontainers
 import spock.lang.Shared
 import spock.lang.Specification
 
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+import static org.camunda.spin.Spin.S
+
 @Testcontainers
 class CasesApplicationServiceSpec extends Specification {
 
@@ -25,12 +39,17 @@ class CasesApplicationServiceSpec extends Specification {
             new LocalStackContainer("0.11.4").withServices(LocalStackContainer.Service.S3)
 
     AmazonS3 amazonS3
+    AwsProperties awsProperties
     CasesApplicationService casesApplicationService
 
     def historyService = Mock(HistoryService)
     def elasticsearchClient = Mock(RestHighLevelClient)
     def caseActionService = Mock(CaseActionService)
-    def authorizationService = Mock(AuthorizationService)
+    def formSubmissionRepository = Mock(FormSubmissionRepository)
+    def caseRepository = Mock(CaseRepository)
+    def identityService = Mock(IdentityService)
+    def meterRegistry = new SimpleMeterRegistry()
+    def caseAuthorizationEvaluator = Mock(CaseAuthorizationEvaluator)
 
     def setup() {
         final BasicAWSCredentials credentials = new BasicAWSCredentials('accessKey', 'secretAccessKey')
@@ -41,18 +60,42 @@ class CasesApplicationServiceSpec extends Specification {
                 .enablePathStyleAccess()
                 .build()
 
-        def awsProperties = new AwsProperties()
+        awsProperties = new AwsProperties()
         awsProperties.setCaseBucketName("casedata")
 
-        casesApplicationService = new CasesApplicationService(
+        casesApplicationService = service(Executors.newFixedThreadPool(2))
+
+    }
+
+    def service(ExecutorService formMetadataExecutor) {
+        new CasesApplicationService(
                 historyService,
                 amazonS3,
                 elasticsearchClient,
                 awsProperties,
                 caseActionService,
-                authorizationService
+                new CaseProperties(),
+                Executors.newFixedThreadPool(2),
+                formMetadataExecutor,
+                formSubmissionRepository,
+                caseRepository,
+                identityService,
+                meterRegistry,
+                caseAuthorizationEvaluator
         )
+    }
 
+    def processInstances(String... ids) {
+        def instances = ids.collect { id ->
+            HistoricProcessInstance instance = Mock()
+            instance.getId() >> id
+            instance
+        }
+        HistoricProcessInstanceQuery instanceQuery = Mock()
+        historyService.createHistoricProcessInstanceQuery() >> instanceQuery
+        instanceQuery.processInstanceBusinessKey(_) >> instanceQuery
+        instanceQuery.list() >> instances
+        instances
     }
 
     def 'can return JSON array of submission data'() {
@@ -76,4 +119,321 @@ class CasesApplicationServiceSpec extends Specification {
         result.elements().size() == 2
     }
 
+    def 'streams submission data and skips a corrupt object'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+
+        and: 'a corrupt object between two submissions'
+        amazonS3.putObject(new PutObjectRequest("casedata", "TEST-20200121-001/aForm/xx@x.com-20200128T083155.json",
+                new ClassPathResource("data.json").getInputStream(), new ObjectMetadata()))
+        amazonS3.putObject("casedata", "TEST-20200121-001/bForm/xx@x.com-20200128T083156.json",
+                '{"businessKey": "corrupt", "form": {')
+        amazonS3.putObject(new PutObjectRequest("casedata", "TEST-20200121-001/cForm/xx@x.com-20200128T083157.json",
+                new ClassPathResource("data.json").getInputStream(), new ObjectMetadata()))
+
+        and: 'the user can view the submissions'
+        def platformUser = Mock(PlatformUser)
+        caseAuthorizationEvaluator.isAuthorized(_, platformUser) >> true
+
+        when: 'the submissions are streamed'
+        def output = new ByteArrayOutputStream()
+        casesApplicationService.writeSubmissionData("TEST-20200121-001", output, platformUser)
+
+        then: 'every readable submission is on its own line'
+        def lines = output.toString("UTF-8").readLines()
+        lines.size() == 2
+        lines.every { S(it).prop("businessKey").stringValue() == "businessKey" }
+    }
+
+    def 'streams only the submissions the user is allowed to view'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+
+        and: 'two submissions'
+        amazonS3.putObject("casedata", "TEST-20200121-002/aForm/xx@x.com-20200128T083155.json",
+                '{"name": "allowed"}')
+        amazonS3.putObject("casedata", "TEST-20200121-002/bForm/xx@x.com-20200128T083156.json",
+                '{"name": "restricted"}')
+
+        and: 'the user cannot view one of them'
+        def platformUser = Mock(PlatformUser)
+        caseAuthorizationEvaluator.isAuthorized(_ as SpinJsonNode, platformUser) >> { SpinJsonNode data, user ->
+            data.prop("name").stringValue() == "allowed"
+        }
+
+        when: 'the submissions are streamed'
+        def output = new ByteArrayOutputStream()
+        casesApplicationService.writeSubmissionData("TEST-20200121-002", output, platformUser)
+
+        then: 'only the allowed submission is written'
+        output.toString("UTF-8").readLines() == ['{"name":"allowed"}']
+    }
+
+    def 'can load form references for case details'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+
+        and: 'form data with metadata exists in that bucket'
+        (1..5).each {
+            def metadata = new ObjectMetadata()
+            metadata.addUserMetadata("processinstanceid", "processInstanceId")
+            metadata.addUserMetadata("name", "form${it}")
+            metadata.addUserMetadata("submittedby", "xx%40x.com")
+            amazonS3.putObject(new PutObjectRequest("casedata", "TEST-20200120-001/form${it}/xx@x.com-20200128T08315${it}.json",
+                    new ClassPathResource("data.json").getInputStream(), metadata))
+        }
+
+        and: 'a process instance for the case'
+        processInstances("processInstanceId")
+
+        and: 'no authorizations'
+        caseRepository.findAuthorizations(_) >> [:]
+
+        and: 'a user'
+        PlatformUser platformUser = Mock()
+
+        when: 'case details are requested'
+        def result = casesApplicationService.getByKey("TEST-20200120-001", [], platformUser)
+
+        then: 'all form references are returned in listing order'
+        def formReferences = result.processInstances.first().formReferences
+        formReferences.size() == 5
+        formReferences.collect { it.name } == ['form1', 'form2', 'form3', 'form4', 'form5']
+        formReferences.first().submittedBy == 'xx@x.com'
+
+        and: 'the submissions are added to the index'
+        1 * formSubmissionRepository.findByBusinessKey("casedata", "TEST-20200120-001") >> []
+        5 * formSubmissionRepository.save(_ as FormSubmission)
+
+        and: 'the case is not listed again'
+        1 * formSubmissionRepository.markReconciled("casedata", "TEST-20200120-001")
+    }
+
+    def 'leaves out form references when the metadata executor is busy'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+
+        and: 'form data with metadata exists in that bucket'
+        def metadata = new ObjectMetadata()
+        metadata.addUserMetadata("processinstanceid", "processInstanceId")
+        metadata.addUserMetadata("name", "form")
+        amazonS3.putObject(new PutObjectRequest("casedata", "TEST-20200121-003/form/xx@x.com-20200128T083155.json",
+                new ClassPathResource("data.json").getInputStream(), metadata))
+
+        and: 'a metadata executor that rejects every request'
+        def formMetadataExecutor = Executors.newFixedThreadPool(1)
+        formMetadataExecutor.shutdown()
+        def service = service(formMetadataExecutor)
+
+        and: 'a process instance for the case'
+        processInstances("processInstanceId")
+        caseRepository.findAuthorizations(_) >> [:]
+        formSubmissionRepository.findByBusinessKey("casedata", "TEST-20200121-003") >> []
+
+        when: 'case details are requested'
+        def result = service.getByKey("TEST-20200121-003", [], Mock(PlatformUser))
+
+        then: 'the case is returned without the form whose metadata could not be loaded'
+        result.processInstances.size() == 1
+        !result.processInstances.first().formReferences
+
+        and: 'nothing is indexed'
+        0 * formSubmissionRepository.save(_)
+
+        and: 'the case is listed again next time'
+        0 * formSubmissionRepository.markReconciled(_, _)
+
+        and: 'the submission left out is counted'
+        meterRegistry.find("cases.form.metadata.missing").tag("reason", "rejected").counter().count() == 1
+    }
+
+    def 'can load form references from the index'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+
+        and: 'an indexed form submission'
+        def submission = new FormSubmission()
+        submission.setBucket("casedata")
+        submission.setKey("TEST-20200120-002/form/xx@x.com-20200128T083155.json")
+        submission.setBusinessKey("TEST-20200120-002")
+        submission.setProcessInstanceId("processInstanceId")
+        submission.setName("form")
+        submission.setSubmittedBy("xx@x.com")
+        formSubmissionRepository.findByBusinessKey("casedata", "TEST-20200120-002") >> [submission]
+
+        and: 'a process instance for the case'
+        processInstances("processInstanceId")
+
+        and: 'no authorizations'
+        caseRepository.findAuthorizations(_) >> [:]
+
+        when: 'case details are requested'
+        def result = casesApplicationService.getByKey("TEST-20200120-002", [], Mock(PlatformUser))
+
+        then: 'the indexed form reference is returned'
+        def formReferences = result.processInstances.first().formReferences
+        formReferences.size() == 1
+        formReferences.first().dataPath == "TEST-20200120-002/form/xx@x.com-20200128T083155.json"
+
+        and: 'nothing is added to the index'
+        0 * formSubmissionRepository.save(_)
+
+        and: 'user tasks are counted with one query'
+        1 * caseRepository.countUserTasks(["processInstanceId"]) >> new CaseRepository.UserTaskCounts(open: 2, completed: 3)
+        result.metrics.noOfOpenUserTasks == 2
+        result.metrics.noOfCompletedUserTasks == 3
+    }
+
+    def 'does not list a case that has been reconciled'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+
+        and: 'a submission that is not in the index'
+        def metadata = new ObjectMetadata()
+        metadata.addUserMetadata("processinstanceid", "processInstanceId")
+        metadata.addUserMetadata("name", "form")
+        amazonS3.putObject(new PutObjectRequest("casedata", "TEST-20200121-005/form/xx@x.com-20200128T083155.json",
+                new ClassPathResource("data.json").getInputStream(), metadata))
+
+        and: 'a case that has been reconciled before'
+        formSubmissionRepository.findByBusinessKey("casedata", "TEST-20200121-005") >> []
+        formSubmissionRepository.isReconciled("casedata", "TEST-20200121-005") >> true
+
+        and: 'a process instance for the case'
+        processInstances("processInstanceId")
+        caseRepository.findAuthorizations(_) >> [:]
+
+        when: 'case details are requested'
+        def result = casesApplicationService.getByKey("TEST-20200121-005", [], Mock(PlatformUser))
+
+        then: 'only the index is used'
+        !result.processInstances.first().formReferences
+        0 * formSubmissionRepository.save(_)
+        0 * formSubmissionRepository.markReconciled(_, _)
+    }
+
+    def 'filters process instances by authorization'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+        formSubmissionRepository.findByBusinessKey(_, _) >> []
+
+        and: 'process instances for the case'
+        processInstances('open', 'userOnly', 'otherUser', 'group', 'otherGroup')
+
+        and: 'a user'
+        PlatformUser platformUser = Mock()
+        platformUser.getEmail() >> 'user@x.com'
+        platformUser.getRoles() >> ['role']
+
+        when: 'case details are requested'
+        def result = casesApplicationService.getByKey("TEST-20200120-003", [], platformUser)
+
+        then: 'authorizations are loaded once for all instances'
+        1 * caseRepository.findAuthorizations(['open', 'userOnly', 'otherUser', 'group', 'otherGroup']) >> [
+                userOnly  : new CaseRepository.ProcessInstanceAuthorizations(userIds: ['user@x.com'] as Set),
+                otherUser : new CaseRepository.ProcessInstanceAuthorizations(userIds: ['other@x.com'] as Set),
+                group     : new CaseRepository.ProcessInstanceAuthorizations(groupIds: ['role'] as Set),
+                otherGroup: new CaseRepository.ProcessInstanceAuthorizations(groupIds: ['otherRole'] as Set)
+        ]
+
+        and: 'only authorized instances are returned'
+        result.processInstances.collect { it.id } == ['open', 'userOnly', 'group']
+    }
+
+    def 'builds and times every case detail section'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+        formSubmissionRepository.findByBusinessKey(_, _) >> []
+
+        and: 'a process instance for the case'
+        processInstances("processInstanceId")
+        caseRepository.findAuthorizations(_) >> [:]
+        caseRepository.countUserTasks(_) >> new CaseRepository.UserTaskCounts(open: 1, completed: 2)
+        caseActionService.getAvailableActions(_, _) >> [new CaseDetail.Action()]
+
+        and: 'an authenticated caller'
+        identityService.getCurrentAuthentication() >> new Authentication("user@x.com", ["role"])
+
+        when: 'case details are requested'
+        def result = casesApplicationService.getByKey("TEST-20200120-004", [], Mock(PlatformUser))
+
+        then: 'every section is in the case detail'
+        result.processInstances.collect { it.id } == ['processInstanceId']
+        result.actions.size() == 1
+        result.metrics.noOfOpenUserTasks == 1
+        result.metrics.noOfCompletedUserTasks == 2
+
+        and: 'each section is timed'
+        ['forms', 'history', 'actions', 'metrics'].every { section ->
+            meterRegistry.find("cases.detail.section").tag("section", section).timer().count() == 1
+        }
+    }
+
+    def 'builds case detail sections with the security context of the caller'() {
+        given: 's3 bucket set up'
+        amazonS3.createBucket("casedata")
+        formSubmissionRepository.findByBusinessKey(_, _) >> []
+
+        and: 'a process instance for the case'
+        processInstances("processInstanceId")
+        caseRepository.findAuthorizations(_) >> [:]
+        caseRepository.countUserTasks(_) >> new CaseRepository.UserTaskCounts(open: 0, completed: 0)
+
+        and: 'a caller with a security context'
+        def callerAuthentication = new TestingAuthenticationToken("user@x.com", "password")
+        SecurityContextHolder.getContext().setAuthentication(callerAuthentication)
+
+        and: 'actions that record what they see'
+        def seenAuthentication = null
+        def seenProcessInstances = null
+        caseActionService.getAvailableActions(_, _) >> { CaseDetail detail, PlatformUser user ->
+            seenAuthentication = SecurityContextHolder.getContext().getAuthentication()
+            seenProcessInstances = detail.processInstances.collect { it.id }
+            [new CaseDetail.Action()]
+        }
+
+        when: 'case details are requested'
+        def result = casesApplicationService.getByKey("TEST-20200121-004", [], Mock(PlatformUser))
+
+        then: 'the actions section runs with the caller security context'
+        seenAuthentication == callerAuthentication
+        seenProcessInstances == ['processInstanceId']
+        result.actions.size() == 1
+
+        cleanup:
+        SecurityContextHolder.clearContext()
+    }
+
+    def 'looks up the process instances of many business keys in chunks'() {
+        given: 'more business keys than fit in one query'
+        def businessKeys = (0..<1201).collect { "TEST-20200122-${it}".toString() }
+
+        and: 'a query per chunk that finds one process instance per key'
+        def chunks = []
+        historyService.createHistoricProcessInstanceQuery() >> {
+            def chunk = []
+            def instanceQuery
+            instanceQuery = [
+                    processInstanceBusinessKeyIn: { String[] keys ->
+                        chunk.addAll(keys)
+                        chunks << chunk
+                        instanceQuery
+                    },
+                    list                        : {
+                        chunk.collect { key -> [getBusinessKey: { key }] as HistoricProcessInstance }
+                    }
+            ] as HistoricProcessInstanceQuery
+            instanceQuery
+        }
+
+        when: 'the process instances are looked up'
+        List<HistoricProcessInstance> instances = casesApplicationService.findByBusinessKeys(businessKeys)
+
+        then: 'every chunk is queried once'
+        chunks.collect { it.size() } == [500, 500, 201]
+        chunks.flatten() == businessKeys
+
+        and: 'the results of all chunks are merged'
+        instances.collect { it.businessKey } == businessKeys
+    }
 }
@@ -0,0 +1,95 @@
+package io.digital.patterns.workflow.data
+
+import org.elasticsearch.action.ActionListener
+import org.elasticsearch.action.DocWriteRequest
+import org.elasticsearch.action.bulk.BulkItemResponse
+import org.elasticsearch.action.bulk.BulkRequest
+import org.elasticsearch.action.bulk.BulkResponse
+import org.elasticsearch.action.index.IndexRequest
+import org.elasticsearch.action.index.IndexResponse
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException
+import org.elasticsearch.index.shard.ShardId
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.function.BiConsumer
+
+class FormDataIndexerSpec extends Specification {
+
+    def bulkRequests = []
+
+    def indexer(List<Closure<BulkItemResponse>> responses) {
+        BiConsumer<BulkRequest, ActionListener<BulkResponse>> bulk = { BulkRequest request, listener ->
+            def respond = responses[bulkRequests.size()]
+            bulkRequests << request.requests()*.id()
+            def items = request.requests().withIndex().collect { DocWriteRequest<?> item, int i ->
+                respond(i, item)
+            } as BulkItemResponse[]
+            listener.onResponse(new BulkResponse(items, 1))
+        }
+        new FormDataIndexer(new FormDataProperties(), bulk)
+    }
+
+    static BulkItemResponse indexed(int position, DocWriteRequest<?> request) {
+        new BulkItemResponse(position, DocWriteRequest.OpType.INDEX,
+                new IndexResponse(new ShardId(request.index(), "_na_", 0), "_doc", request.id(), 1, 1, 1, true))
+    }
+
+    static BulkItemResponse failed(int position, DocWriteRequest<?> request, Exception cause) {
+        new BulkItemResponse(position, DocWriteRequest.OpType.INDEX,
+                new BulkItemResponse.Failure(request.index(), "_doc", request.id(), cause))
+    }
+
+    def 'completes each request with the outcome of its own document after a retry'() {
+        given: 'the first document is rejected and then fails once it is retried'
+        def indexer = indexer([
+                { int i, DocWriteRequest<?> request ->
+                    request.id() == "first" ? failed(i, request, new EsRejectedExecutionException("queue full"))
+                            : indexed(i, request)
+                },
+                { int i, DocWriteRequest<?> request ->
+                    failed(i, request, new IllegalArgumentException("mapper_parsing_exception"))
+                }
+        ])
+
+        when: 'both documents are indexed'
+        def first = indexer.index(new IndexRequest("20200120").id("first").source([name: "first"]))
+        def second = indexer.index(new IndexRequest("20200120").id("second").source([name: "second"]))
+        indexer.flush()
+        second.get(10, TimeUnit.SECONDS)
+
+        then: 'only the rejected document was retried'
+        bulkRequests == [["first", "second"], ["first"]]
+
+        and: 'the second document is indexed'
+        second.isDone() && !second.isCompletedExceptionally()
+
+        when: 'the first document is waited for'
+        first.get(10, TimeUnit.SECONDS)
+
+        then: 'it failed with its own error'
+        def e = thrown(ExecutionException)
+        e.cause.message.contains("mapper_parsing_exception")
+
+        cleanup:
+        indexer.close()
+    }
+
+    def 'completes requests for the same document in order'() {
+        given:
+        def indexer = indexer([{ int i, DocWriteRequest<?> request -> indexed(i, request) }])
+
+        when: 'the same document is indexed twice in a batch'
+        def first = indexer.index(new IndexRequest("20200120").id("form").source([version: 1]))
+        def second = indexer.index(new IndexRequest("20200120").id("form").source([version: 2]))
+        indexer.flush()
+
+        then: 'both requests complete'
+        first.get(10, TimeUnit.SECONDS) == null
+        second.get(10, TimeUnit.SECONDS) == null
+
+        cleanup:
+        indexer.close()
+    }
+}
@@ -0,0 +1,174 @@
+package io.digital.patterns.workflow.data
+
+import com.amazonaws.AmazonServiceException
+import org.camunda.bpm.engine.HistoryService
+import org.camunda.bpm.engine.ProcessEngineException
+import org.camunda.bpm.engine.RuntimeService
+import org.camunda.bpm.engine.history.HistoricProcessInstance
+import org.camunda.bpm.engine.history.HistoricProcessInstanceQuery
+import spock.lang.Specification
+
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+
+class FormDataOutboxDispatcherSpec extends Specification {
+
+    def outbox = Mock(FormDataOutbox)
+    def historyService = Mock(HistoryService)
+    def runtimeService = Mock(RuntimeService)
+    def productBucketResolver = Mock(ProductBucketResolver)
+    def formDataService = Mock(FormDataService)
+    def config = new FormDataProperties.Outbox()
+    def dispatcher = new FormDataOutboxDispatcher(outbox, config, historyService, runtimeService,
+            new FormObjectSplitter(),
+            productBucketResolver, formDataService)
+
+    def processInstance = Mock(HistoricProcessInstance)
+
+    def setup() {
+        HistoricProcessInstanceQuery query = Mock()
+        historyService.createHistoricProcessInstanceQuery() >> query
+        query.processInstanceId(_) >> query
+        query.singleResult() >> processInstance
+        productBucketResolver.resolve("definitionId") >> "bucket"
+    }
+
+    def entry(int attempts) {
+        def entry = new FormDataOutboxEntry()
+        entry.setId("id")
+        entry.setProcessInstanceId("processInstanceId")
+        entry.setProcessDefinitionId("definitionId")
+        entry.setExecutionId("executionId")
+        entry.setPayload('{"test": {"form": {"name": "test"}}}')
+        entry.setAttempts(attempts)
+        return entry
+    }
+
+    def 'stores forms and removes the entry'() {
+        given: 'an entry is due'
+        def entry = entry(0)
+        outbox.findDue(_, _, _) >> [entry]
+        outbox.claim(entry, _) >> true
+
+        when: 'the outbox is dispatched'
+        def stored = dispatcher.dispatch()
+
+        then: 'the form is saved'
+        1 * formDataService.save({ it.name == "test" && it.asString() == '{"form": {"name": "test"}}' },
+                processInstance, "bucket") >>
+                CompletableFuture.completedFuture("key")
+
+        and: 'the index requests are flushed'
+        1 * formDataService.flush()
+
+        and: 'the entry is removed'
+        1 * outbox.delete("id")
+        stored == 1
+    }
+
+    def 'reschedules an entry that failed'() {
+        given: 'an entry is due'
+        def entry = entry(2)
+        outbox.findDue(_, _, _) >> [entry]
+        outbox.claim(entry, _) >> true
+        formDataService.save(_, _, _) >> { throw new RuntimeException("ES unavailable") }
+
+        when: 'the outbox is dispatched'
+        def stored = dispatcher.dispatch()
+
+        then: 'the entry is retried later with backoff'
+        1 * outbox.reschedule("id", { Instant next -> next.isAfter(Instant.now().plusSeconds(3)) }, _)
+        0 * outbox.delete(_)
+        stored == 0
+    }
+
+    def 'skips an entry claimed by another dispatcher'() {
+        given: 'an entry is due but claimed elsewhere'
+        def entry = entry(0)
+        outbox.findDue(_, _, _) >> [entry]
+        outbox.claim(entry, _) >> false
+
+        when: 'the outbox is dispatched'
+        dispatcher.dispatch()
+
+        then: 'nothing is saved'
+        0 * formDataService.save(_, _, _)
+        0 * outbox.delete(_)
+    }
+
+    def 'reschedules an entry that was not indexed'() {
+        given: 'an entry is due'
+        def entry = entry(0)
+        outbox.findDue(_, _, _) >> [entry]
+        outbox.claim(entry, _) >> true
+        formDataService.save(_, _, _) >>
+                CompletableFuture.failedFuture(new IllegalStateException("rejected"))
+
+        when: 'the outbox is dispatched'
+        dispatcher.dispatch()
+
+        then: 'the entry is retried later'
+        1 * outbox.reschedule("id", _, { it.contains("rejected") })
+        0 * outbox.delete(_)
+    }
+
+    def 'reschedules an entry that S3 failed to store'() {
+        given: 'an entry is due'
+        def entry = entry(0)
+        outbox.findDue(_, _, _) >> [entry]
+        outbox.claim(entry, _) >> true
+
+        and: 'S3 is unavailable'
+        def unavailable = new AmazonServiceException("Service Unavailable")
+        unavailable.setStatusCode(503)
+        formDataService.save(_, _, _) >> { throw unavailable }
+
+        when: 'the outbox is dispatched'
+        def stored = dispatcher.dispatch()
+
+        then: 'the entry is retried later'
+        1 * outbox.reschedule("id", { Instant next -> next.isAfter(Instant.now()) }, { it.contains("503") })
+        0 * outbox.delete(_)
+        stored == 0
+
+        and: 'no incident is raised yet'
+        0 * runtimeService.createIncident(_, _, _, _)
+    }
+
+    def 'raises an incident once the last attempt fails'() {
+        given: 'an entry is on its last attempt'
+        def entry = entry(config.maxAttempts - 1)
+        outbox.findDue(_, _, _) >> [entry]
+        outbox.claim(entry, _) >> true
+        formDataService.save(_, _, _) >> { throw new AmazonServiceException("Slow Down") }
+
+        when: 'the outbox is dispatched'
+        dispatcher.dispatch()
+
+        then: 'an incident is raised on the execution'
+        1 * runtimeService.createIncident("FAILED_TO_CREATE_S3_RECORD", "executionId", _, { it.contains("Slow Down") })
+
+        and: 'the entry is left in the outbox'
+        1 * outbox.reschedule("id", _, _)
+        0 * outbox.delete(_)
+    }
+
+    def 'keeps the entry when the execution has ended'() {
+        given: 'an entry is on its last attempt'
+        def entry = entry(config.maxAttempts - 1)
+        outbox.findDue(_, _, _) >> [entry]
+        outbox.claim(entry, _) >> true
+        formDataService.save(_, _, _) >> { throw new AmazonServiceException("Slow Down") }
+
+        and: 'the execution has ended'
+        runtimeService.createIncident(_, _, _, _) >> { throw new ProcessEngineException("execution not found") }
+
+        when: 'the outbox is dispatched'
+        dispatcher.dispatch()
+
+        then: 'the entry is left in the outbox'
+        1 * outbox.reschedule("id", _, _)
+        0 * outbox.delete(_)
+        noExceptionThrown()
+    }
+}
@@ -1,10 +1,10 @@
 package io.digital.patterns.workflow.data
 
+import com.amazonaws.AmazonServiceException
 import com.amazonaws.services.s3.AmazonS3
 import com.amazonaws.services.s3.AmazonS3ClientBuilder
 import io.digital.patterns.workflow.aws.AwsProperties
 import org.apache.http.HttpHost
-import org.camunda.bpm.engine.RuntimeService
 import org.camunda.bpm.engine.history.HistoricProcessInstance
 import org.elasticsearch.action.get.GetRequest
 import org.elasticsearch.client.RequestOptions
@@ -14,10 +14,12 @@ import org.testcontainers.containers.localstack.LocalStackContainer
 import org.testcontainers.elasticsearch.ElasticsearchContainer
 import org.testcontainers.spock.Testcontainers
 import spock.lang.Shared
+import org.springframework.util.unit.DataSize
 import spock.lang.Specification
 
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
+import java.util.concurrent.TimeUnit
 
 @Testcontainers
 class FormDataServiceSpec extends Specification {
@@ -33,10 +35,11 @@ class FormDataServiceSpec extends Specification {
             new ElasticsearchContainer("docker.elastic.co/elasticsearch/elasticsearch-oss:7.6.2")
 
 
-    RuntimeService runtimeService = Mock()
+    FormSubmissionRepository formSubmissionRepository = Mock()
     AmazonS3 amazonS3
     def elasticsearchClient
 
+    FormDataIndexer formDataIndexer
     FormDataService service
 
 
@@ -51,10 +54,20 @@ class FormDataServiceSpec extends Specification {
                 HttpHost.create(esContainer.getHttpHostAddress())
         ))
 
-        service = new FormDataService(runtimeService, amazonS3, elasticsearchClient )
+        formDataIndexer = new FormDataIndexer(elasticsearchClient, new FormDataProperties())
+        service = new FormDataService(amazonS3, formDataIndexer, formSubmissionRepository,
+                new FormDataProperties.Upload())
 
     }
 
+    def cleanup() {
+        formDataIndexer.close()
+    }
+
+    def formObject(String json) {
+        new FormObjectSplitter().split(json).last()
+    }
+
     def 'can generate request'() {
         given: 'a form'
         def form = '''
@@ -83,7 +96,9 @@ class FormDataServiceSpec extends Specification {
         amazonS3.createBucket("formdata")
 
         when: 'request is made'
-        service.save(form, processInstance, "id", "formdata")
+        def saved = service.save(formObject(form), processInstance, "formdata")
+        service.flush()
+        saved.get(10, TimeUnit.SECONDS)
 
         then: 'request is not null'
         def result = amazonS3.getObject("formdata", FormDataService.key(
@@ -103,7 +118,140 @@ class FormDataServiceSpec extends Specification {
                 builder.build())
         response.sourceAsMap.size() != 0
 
-        0 * runtimeService.createIncident(_,_,_)
+        and: 'submission is claimed and marked as stored'
+        1 * formSubmissionRepository.claim({
+            it.bucket == "formdata" && it.businessKey == "businessKey" && it.processInstanceId == "processInstance"
+        }, _) >> FormSubmissionRepository.Claim.CLAIMED
+        1 * formSubmissionRepository.markStored({ it.bucket == "formdata" })
     }
 
-}
\ No newline at end of file
+    def 'uploads large forms in parts'() {
+        given: 'a service that uploads forms over 1KB in parts'
+        def upload = new FormDataProperties.Upload()
+        upload.setMultipartThreshold(DataSize.ofKilobytes(1))
+        def multipartService = new FormDataService(amazonS3, formDataIndexer,
+                formSubmissionRepository, upload)
+
+        and: 'a large form'
+        def form = """
+            {
+                "notes": "${'x' * 4096}",
+                "form": {
+                   "submittedBy" : "email",
+                   "name": "largeForm",
+                   "formVersionId": "versionId",
+                   "submissionDate": "20200120T12:12:00",
+                   "title": "test"
+                }
+            }
+        """
+        HistoricProcessInstance processInstance = Mock()
+        processInstance.getId() >> "processInstance"
+        processInstance.getProcessDefinitionId() >> "processdefinitionid"
+        processInstance.getBusinessKey() >> "businessKey"
+        amazonS3.createBucket("largeformdata")
+        formSubmissionRepository.claim(_, _) >> FormSubmissionRepository.Claim.CLAIMED
+
+        when: 'the form is saved'
+        def saved = multipartService.save(formObject(form.toString()), processInstance, "largeformdata")
+        multipartService.flush()
+        saved.get(10, TimeUnit.SECONDS)
+
+        then: 'the whole form is stored'
+        def result = amazonS3.getObject("largeformdata", FormDataService.key(
+                "businessKey",
+                "largeForm",
+                "email",
+                "20200120T12:12:00"
+        ))
+        result.objectContent.text == form.toString()
+
+        cleanup:
+        multipartService.shutdown()
+    }
+
+    def 'does not upload a form that has already been stored'() {
+        given: 'a stored form'
+        def form = '''
+            {
+                "form": {
+                   "submittedBy" : "email",
+                   "name": "storedForm",
+                   "formVersionId": "versionId",
+                   "submissionDate": "20200120T12:12:00",
+                   "title": "test"
+                }
+            }
+        '''
+        HistoricProcessInstance processInstance = Mock()
+        processInstance.getId() >> "processInstance"
+        processInstance.getBusinessKey() >> "businessKey"
+        amazonS3.createBucket("storedformdata")
+        formSubmissionRepository.claim(_, _) >> FormSubmissionRepository.Claim.STORED
+
+        when: 'the form is saved'
+        def saved = service.save(formObject(form), processInstance, "storedformdata")
+        service.flush()
+        def key = saved.get(10, TimeUnit.SECONDS)
+
+        then: 'the form is not uploaded again'
+        !amazonS3.doesObjectExist("storedformdata", key)
+        0 * formSubmissionRepository.markStored(_)
+
+        and: 'the form is still indexed'
+        key == FormDataService.key("businessKey", "storedForm", "email", "20200120T12:12:00")
+    }
+
+    def 'fails while another node stores the form'() {
+        given: 'a form claimed by another node'
+        def form = '''
+            {
+                "form": {
+                   "submittedBy" : "email",
+                   "name": "claimedForm",
+                   "formVersionId": "versionId",
+                   "submissionDate": "20200120T12:12:00",
+                   "title": "test"
+                }
+            }
+        '''
+        HistoricProcessInstance processInstance = Mock()
+        processInstance.getBusinessKey() >> "businessKey"
+        formSubmissionRepository.claim(_, _) >> FormSubmissionRepository.Claim.IN_PROGRESS
+
+        when: 'the form is saved'
+        service.save(formObject(form), processInstance, "claimedformdata")
+
+        then: 'the save fails so that it is retried'
+        thrown(IllegalStateException)
+    }
+
+    def 'fails when the form cannot be uploaded'() {
+        given: 'a form for a bucket that does not exist'
+        def form = '''
+            {
+                "form": {
+                   "submittedBy" : "email",
+                   "name": "missingForm",
+                   "formVersionId": "versionId",
+                   "submissionDate": "20200120T12:12:00",
+                   "title": "test"
+                }
+            }
+        '''
+        HistoricProcessInstance processInstance = Mock()
+        processInstance.getId() >> "processInstance"
+        processInstance.getBusinessKey() >> "businessKey"
+        formSubmissionRepository.claim(_, _) >> FormSubmissionRepository.Claim.CLAIMED
+
+        when: 'the form is saved'
+        service.save(formObject(form), processInstance, "missingformdata")
+
+        then: 'the save fails so that it is retried'
+        thrown(AmazonServiceException)
+
+        and: 'the claim is released'
+        1 * formSubmissionRepository.release({ it.bucket == "missingformdata" })
+        0 * formSubmissionRepository.markStored(_)
+    }
+}
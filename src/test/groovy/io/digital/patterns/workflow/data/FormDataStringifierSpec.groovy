@@ -0,0 +1,49 @@
+package io.digital.patterns.workflow.data
+
+import org.json.JSONObject
+import spock.lang.Specification
+
+class FormDataStringifierSpec extends Specification {
+    def stringifier = new FormDataStringifier()
+    def formSplitter = new FormObjectSplitter()
+
+    def 'writes every value as a string'() {
+        given: 'a form with values of every type'
+        def json = '''{
+                        "submit": true,
+                        "count": 2,
+                        "amount": 1.5,
+                        "missing": null,
+                        "address": {
+                            "line": "1 Street",
+                            "current": false
+                        },
+                        "items": [1, "two", null, {"value": 3}, [4, "five"]],
+                        "form": {
+                            "name": "testForm"
+                        }
+                      }'''
+
+        when: 'the form is stringified'
+        def result = new JSONObject(stringifier.stringify(formSplitter.split(json).last()))
+
+        then: 'values are strings'
+        result.getString("submit") == "true"
+        result.getString("count") == "2"
+        result.getString("amount") == "1.5"
+        result.getString("missing") == "null"
+        result.getJSONObject("form").getString("name") == "testForm"
+
+        and: 'objects are kept'
+        result.getJSONObject("address").getString("line") == "1 Street"
+        result.getJSONObject("address").getString("current") == "false"
+
+        and: 'array values are strings and nested arrays are json text'
+        def items = result.getJSONArray("items")
+        items.getString(0) == "1"
+        items.getString(1) == "two"
+        items.getString(2) == "null"
+        items.getJSONObject(3).getString("value") == "3"
+        items.getString(4) == '[4,"five"]'
+    }
+}
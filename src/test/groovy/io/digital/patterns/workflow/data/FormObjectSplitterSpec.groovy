@@ -1,5 +1,6 @@
 package io.digital.patterns.workflow.data
 
+import org.json.JSONObject
 import spock.lang.Specification
 
 class FormObjectSplitterSpec extends Specification {
@@ -72,4 +73,39 @@ class FormObjectSplitterSpec extends Specification {
         then: 'there should be 3 forms'
         forms.size() == 3
     }
+
+    def 'reads form values and keeps the form json'() {
+        given: 'a variable with a nested form'
+        def json = '''{"businessKey": "TEST123", "forms": [{"testForm": {"submit": true, "form": {
+            "name": "testForm", "title": "Test form", "formVersionId": "versionId",
+            "submittedBy": "user@x.com", "submissionDate": "2020-01-28T08:31:55.297Z", "process": {"name": "ignored"}}}}]}'''
+
+        when: 'split is invoked'
+        def forms = formSplitter.split(json)
+
+        then: 'the form values are read'
+        forms.size() == 1
+        def form = forms.first()
+        form.name == "testForm"
+        form.title == "Test form"
+        form.formVersionId == "versionId"
+        form.submittedBy == "user@x.com"
+        form.submissionDate == "2020-01-28T08:31:55.297Z"
+
+        and: 'the form json is taken from the variable'
+        form.asString().startsWith('{"submit": true, "form": {')
+        new JSONObject(form.asString()).getJSONObject("form").getString("name") == "testForm"
+        form.length == form.asString().getBytes("UTF-8").length
+    }
+
+    def 'ignores forms nested below a form'() {
+        given: 'a form that contains another form'
+        def json = '''{"outer": {"form": {"name": "outer"}, "inner": {"form": {"name": "inner"}}}}'''
+
+        when: 'split is invoked'
+        def forms = formSplitter.split(json)
+
+        then: 'only the outer form is returned'
+        forms*.name == ["outer"]
+    }
 }
@@ -0,0 +1,60 @@
+package io.digital.patterns.workflow.data
+
+import io.digital.patterns.workflow.aws.AwsProperties
+import org.camunda.bpm.engine.RepositoryService
+import org.camunda.bpm.model.bpmn.Bpmn
+import spock.lang.Specification
+
+class ProductBucketResolverSpec extends Specification {
+
+    def repositoryService = Mock(RepositoryService)
+    def awsProperties = new AwsProperties()
+    def resolver = new ProductBucketResolver("prefix", awsProperties, repositoryService)
+
+    def setup() {
+        awsProperties.setCaseBucketName("casebucket")
+    }
+
+    def 'reads the product of a definition once'() {
+        given: 'a model with a product property'
+        def model = Bpmn.readModelFromStream(new ByteArrayInputStream('''<?xml version="1.0" encoding="UTF-8"?>
+            <bpmn:definitions xmlns:bpmn="http://www.omg.org/spec/BPMN/20100524/MODEL"
+                              xmlns:camunda="http://camunda.org/schema/1.0/bpmn"
+                              id="definitions" targetNamespace="http://bpmn.io/schema/bpmn">
+              <bpmn:process id="example" isExecutable="true">
+                <bpmn:extensionElements>
+                  <camunda:properties>
+                    <camunda:property name="product" value="test" />
+                  </camunda:properties>
+                </bpmn:extensionElements>
+                <bpmn:startEvent id="start" />
+              </bpmn:process>
+            </bpmn:definitions>'''.getBytes("UTF-8")))
+
+        when: 'the bucket is resolved twice'
+        def first = resolver.resolve("example:1:1")
+        def second = resolver.resolve("example:1:1")
+
+        then: 'the model is only read once'
+        1 * repositoryService.getBpmnModelInstance("example:1:1") >> model
+        first == "prefix-test"
+        second == "prefix-test"
+    }
+
+    def 'falls back to the case bucket'() {
+        given: 'a model without a product property'
+        def model = Bpmn.createExecutableProcess("example")
+                .startEvent()
+                .endEvent()
+                .done()
+
+        when: 'the bucket is resolved twice'
+        def first = resolver.resolve("example:1:2")
+        def second = resolver.resolve("example:1:2")
+
+        then: 'the case bucket is used and the model is only read once'
+        1 * repositoryService.getBpmnModelInstance("example:1:2") >> model
+        first == "casebucket"
+        second == "casebucket"
+    }
+}
@@ -0,0 +1,57 @@
+package io.digital.patterns.workflow.encrypt
+
+import io.digitalpatterns.camunda.encryption.ProcessDefinitionEncryptionParser
+import org.camunda.bpm.engine.RepositoryService
+import org.camunda.bpm.engine.repository.ProcessDefinition
+import org.camunda.bpm.engine.repository.ProcessDefinitionQuery
+import spock.lang.Specification
+
+class EncryptionFlagCacheSpec extends Specification {
+
+    def parser = Mock(ProcessDefinitionEncryptionParser)
+    def repositoryService = Mock(RepositoryService)
+    def cache = new EncryptionFlagCache(parser, repositoryService)
+
+    def query(String id, ProcessDefinition result) {
+        ProcessDefinitionQuery query = Mock()
+        query.processDefinitionId(id) >> query
+        query.singleResult() >> result
+        query
+    }
+
+    def 'reads the flag once per process definition'() {
+        given: 'a process definition'
+        def processDefinition = Mock(ProcessDefinition)
+
+        when: 'the flag is checked twice'
+        def first = cache.shouldEncrypt("definitionId")
+        def second = cache.shouldEncrypt("definitionId")
+
+        then: 'the model is read once'
+        1 * repositoryService.createProcessDefinitionQuery() >> query("definitionId", processDefinition)
+        1 * parser.shouldEncrypt(processDefinition, "encryptVariables") >> true
+
+        and:
+        first
+        second
+    }
+
+    def 'does not encrypt variables of an unknown process definition'() {
+        when: 'the flag is checked twice for an unknown definition id'
+        def first = cache.shouldEncrypt("unknownId")
+        def second = cache.shouldEncrypt("unknownId")
+
+        then: 'the definition is looked up each time'
+        2 * repositoryService.createProcessDefinitionQuery() >> query("unknownId", null)
+        0 * parser.shouldEncrypt(_, _)
+
+        and: 'nothing is encrypted'
+        !first
+        !second
+    }
+
+    def 'does not encrypt without a process definition'() {
+        expect:
+        !cache.shouldEncrypt(null)
+    }
+}
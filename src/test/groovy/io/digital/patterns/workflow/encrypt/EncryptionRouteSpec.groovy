@@ -0,0 +1,59 @@
+package io.digital.patterns.workflow.encrypt
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.ws.rs.container.ContainerRequestContext
+import javax.ws.rs.core.UriInfo
+
+class EncryptionRouteSpec extends Specification {
+
+    @Unroll
+    def '#method #path is routed to #route'() {
+        expect:
+        EncryptionRoute.classify(path, method) == route
+
+        where:
+        path                                         | method   || route
+        'process-definition/key/test/start'          | 'POST'   || EncryptionRoute.START_PROCESS
+        'process-definition/key/test/submit-form'    | 'POST'   || EncryptionRoute.START_PROCESS
+        'process-definition/key/test'                | 'GET'    || EncryptionRoute.NONE
+        'task/id/complete'                           | 'POST'   || EncryptionRoute.TASK
+        'task/id/submit-form'                        | 'POST'   || EncryptionRoute.TASK
+        'task/id/resolve'                            | 'post'   || EncryptionRoute.TASK
+        'task/id/claim'                              | 'POST'   || EncryptionRoute.NONE
+        'process-instance/id/variables'              | 'POST'   || EncryptionRoute.VARIABLES
+        'task/id/localVariables'                     | 'PUT'    || EncryptionRoute.VARIABLES
+        'process-instance/id/variables'              | 'GET'    || EncryptionRoute.GET_VARIABLES
+        'task/id/form-variables'                     | 'GET'    || EncryptionRoute.GET_VARIABLES
+        'process-instance/id/variables/name'         | 'DELETE' || EncryptionRoute.NONE
+        'variable-instance'                          | 'GET'    || EncryptionRoute.VARIABLE_INSTANCE
+        'variable-instance'                          | 'POST'   || EncryptionRoute.VARIABLE_INSTANCE
+        'variable-instance/id'                       | 'GET'    || EncryptionRoute.VARIABLE_INSTANCE
+        'variable-instance/id/data'                  | 'GET'    || EncryptionRoute.NONE
+        'variable-instance/count'                    | 'GET'    || EncryptionRoute.NONE
+        'variable-instance/count'                    | 'POST'   || EncryptionRoute.NONE
+        'process-instance'                           | 'GET'    || EncryptionRoute.NONE
+    }
+
+    def 'classifies a request once'() {
+        given:
+        def properties = [:]
+        def uriInfo = Mock(UriInfo)
+        def requestContext = Mock(ContainerRequestContext) {
+            getProperty(_ as String) >> { String name -> properties[name] }
+            setProperty(_ as String, _) >> { String name, Object value -> properties[name] = value }
+            getMethod() >> 'POST'
+            getUriInfo() >> uriInfo
+        }
+
+        when:
+        def first = EncryptionRoute.of(requestContext)
+        def second = EncryptionRoute.of(requestContext)
+
+        then:
+        first == EncryptionRoute.TASK
+        second == EncryptionRoute.TASK
+        1 * uriInfo.getPath() >> 'task/id/complete'
+    }
+}
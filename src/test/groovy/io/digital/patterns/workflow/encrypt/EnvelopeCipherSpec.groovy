@@ -0,0 +1,81 @@
+package io.digital.patterns.workflow.encrypt
+
+import spock.lang.Specification
+
+class EnvelopeCipherSpec extends Specification {
+
+    def cipher = new EnvelopeCipher("v1", "test", "test", true)
+
+    def 'can encrypt and decrypt'() {
+        when: 'a value is encrypted'
+        def envelope = cipher.encrypt('{"name":"test"}')
+
+        then: 'the envelope holds the key id'
+        envelope.keyId == "v1"
+
+        and: 'the value can be decrypted from the stored envelope'
+        cipher.decrypt(VariableEnvelope.fromBytes(envelope.toBytes())) == '{"name":"test"}'
+    }
+
+    def 'uses a new IV for every value'() {
+        expect:
+        cipher.encrypt('{}').iv != cipher.encrypt('{}').iv
+    }
+
+    def 'rejects a modified envelope'() {
+        given: 'an envelope with a modified ciphertext'
+        def bytes = cipher.encrypt('{"name":"test"}').toBytes()
+        bytes[bytes.length - 1] = (byte) (bytes[bytes.length - 1] ^ 1)
+
+        when: 'it is decrypted'
+        cipher.decrypt(VariableEnvelope.fromBytes(bytes))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'rejects an envelope of an unknown key'() {
+        given: 'an envelope written with another key id'
+        def envelope = new EnvelopeCipher("v2", "test", "test", true).encrypt('{}')
+
+        when: 'it is decrypted'
+        cipher.decrypt(envelope)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def 'reads envelopes of a previous key after rotation'() {
+        given: 'an envelope written with the previous key'
+        def envelope = cipher.encrypt('{"name":"old"}')
+
+        and: 'a cipher rotated to a new key'
+        def rotated = new EnvelopeCipher("v2", [
+                v1: EnvelopeCipher.deriveKey("test", "test"),
+                v2: EnvelopeCipher.deriveKey("new", "new")
+        ], true)
+
+        expect: 'new envelopes are written with the new key'
+        rotated.encrypt('{}').keyId == "v2"
+        rotated.decrypt(rotated.encrypt('{"name":"new"}')) == '{"name":"new"}'
+
+        and: 'envelopes of the previous key can still be read'
+        rotated.decrypt(envelope) == '{"name":"old"}'
+    }
+
+    def 'requires the current key'() {
+        when:
+        new EnvelopeCipher("v2", [v1: EnvelopeCipher.deriveKey("test", "test")], true)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def 'rejects an unsupported version'() {
+        when:
+        VariableEnvelope.fromBytes([2, 0] as byte[])
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
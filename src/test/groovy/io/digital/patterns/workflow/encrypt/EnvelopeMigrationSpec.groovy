@@ -0,0 +1,68 @@
+package io.digital.patterns.workflow.encrypt
+
+import io.digitalpatterns.camunda.encryption.DefaultProcessInstanceSpinVariableDecryptor
+import io.digitalpatterns.camunda.encryption.DefaultProcessInstanceSpinVariableEncryptor
+import org.apache.commons.lang3.SerializationUtils
+import org.camunda.bpm.engine.test.ProcessEngineRule
+import org.camunda.bpm.engine.variable.Variables
+import org.camunda.bpm.engine.variable.value.ObjectValue
+import org.camunda.bpm.model.bpmn.Bpmn
+import org.camunda.spin.Spin
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.crypto.SealedObject
+
+class EnvelopeMigrationSpec extends Specification {
+
+    @Rule
+    ProcessEngineRule engineRule = new ProcessEngineRule()
+
+    def cipher = new EnvelopeCipher("v1", "test", "test", true)
+    def encryptor = new DefaultProcessInstanceSpinVariableEncryptor("test", "test")
+    def decryptor = new DefaultProcessInstanceSpinVariableDecryptor("test", "test")
+
+    def sealedValue(String json) {
+        SealedObject sealed = encryptor.encrypt(Spin.JSON(json))
+        Variables.serializedObjectValue(Base64.encoder.encodeToString(SerializationUtils.serialize(sealed)))
+                .serializationDataFormat(Variables.SerializationDataFormats.JAVA)
+                .objectTypeName(SealedObject.class.getName())
+                .create()
+    }
+
+    def 'sealed objects are rewritten as envelopes'() {
+        given: 'process and task variables stored as sealed objects'
+        engineRule.repositoryService.createDeployment()
+                .addModelInstance("migration.bpmn", Bpmn.createExecutableProcess("migration")
+                        .startEvent().userTask().endEvent().done())
+                .deploy()
+        def instances = (1..3).collect {
+            engineRule.runtimeService.startProcessInstanceByKey("migration",
+                    ['form': sealedValue('{"name":"test' + it + '"}'), 'plain': 'value'])
+        }
+        def task = engineRule.taskService.createTaskQuery().processInstanceId(instances[0].id).singleResult()
+        engineRule.taskService.setVariableLocal(task.id, 'taskForm', sealedValue('{"name":"task"}'))
+
+        when: 'the migration runs in small batches'
+        def migrated = new EnvelopeMigration(engineRule.runtimeService, engineRule.taskService,
+                decryptor, cipher, 2).migrate()
+
+        then: 'every sealed object is rewritten'
+        migrated == 4
+
+        and: 'the variables are envelopes holding the same json'
+        instances.eachWithIndex { instance, i ->
+            ObjectValue form = engineRule.runtimeService.getVariableTyped(instance.id, 'form', false)
+            assert form.objectTypeName == VariableEnvelope.class.getName()
+            assert engineRule.runtimeService.getVariable(instance.id, 'form').toString() ==
+                    '{"name":"test' + (i + 1) + '"}'
+            assert engineRule.runtimeService.getVariable(instance.id, 'plain') == 'value'
+        }
+        ObjectValue taskForm = engineRule.taskService.getVariableLocalTyped(task.id, 'taskForm', false)
+        taskForm.objectTypeName == VariableEnvelope.class.getName()
+
+        and: 'nothing is left to migrate'
+        new EnvelopeMigration(engineRule.runtimeService, engineRule.taskService,
+                decryptor, cipher, 2).migrate() == 0
+    }
+}
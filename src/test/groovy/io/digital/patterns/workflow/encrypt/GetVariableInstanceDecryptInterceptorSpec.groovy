@@ -1,12 +1,15 @@
 package io.digital.patterns.workflow.encrypt
 
+import com.fasterxml.jackson.databind.ObjectMapper
 import io.digital.patterns.workflow.SpringApplicationContext
 import io.digitalpatterns.camunda.encryption.*
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.camunda.bpm.engine.rest.dto.runtime.VariableInstanceDto
 import org.camunda.bpm.engine.test.ProcessEngineRule
 import org.camunda.bpm.engine.variable.Variables
 import org.camunda.bpm.engine.variable.type.ValueType
 import org.camunda.spin.Spin
+import org.glassfish.jersey.internal.util.collection.MultivaluedStringMap
 import org.junit.Rule
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory
 import org.springframework.context.ApplicationContext
@@ -50,6 +53,9 @@ class GetVariableInstanceDecryptInterceptorSpec extends Specification {
         beanFactory.registerSingleton("parser", parser)
         beanFactory.registerSingleton("encryptor", encryptor)
         beanFactory.registerSingleton("decryptor", decryptor)
+        beanFactory.registerSingleton("envelopeCipher", new EnvelopeCipher("v1", "test", "test", false))
+        beanFactory.registerSingleton("parallelDecryption", new ParallelDecryption(2, 64))
+        beanFactory.registerSingleton("encryptionMetrics", new EncryptionMetrics(new SimpleMeterRegistry()))
 
         context.refresh()
         context.start()
@@ -108,4 +114,100 @@ class GetVariableInstanceDecryptInterceptorSpec extends Specification {
         instanceDto.taskId == "test"
     }
 
+    def sealedVariable(String name) {
+        def dto = new VariableInstanceDto()
+        dto.setName(name)
+        dto.setValue(encryptor.encrypt(Spin.S('{"name" : "test"}')))
+        dto.setValueInfo(
+                Map.of(
+                        VALUE_INFO_OBJECT_TYPE_NAME, SealedObject.class.getName(),
+                        VALUE_INFO_SERIALIZATION_DATA_FORMAT,
+                        Variables.SerializationDataFormats.JAVA.getName()
+                )
+        )
+        dto.setType(ValueType.OBJECT.getName())
+        return dto
+    }
+
+    def filter(String path, MultivaluedStringMap queryParameters, Object entity) {
+        ContainerRequestContext requestContext = Mock()
+        UriInfo uriInfo = Mock()
+        requestContext.getUriInfo() >> uriInfo
+        requestContext.getMethod() >> 'GET'
+        uriInfo.getPath() >> path
+        uriInfo.getQueryParameters() >> queryParameters
+        ContainerResponseContext responseContext = Mock()
+        responseContext.getEntity() >> entity
+        interceptor.filter(requestContext, responseContext)
+    }
+
+    def 'omits encrypted values when decryption is lazy'() {
+        given: 'sealed variables'
+        def variables = [sealedVariable("a"), sealedVariable("b")]
+        def queryParameters = new MultivaluedStringMap()
+        queryParameters.putSingle("decrypt", "lazy")
+
+        when: 'filter executed'
+        filter('variable-instance', queryParameters, variables)
+
+        then: 'values are omitted'
+        variables.every { it.value == null && it.name }
+
+        and: 'the variables are marked as omitted'
+        variables.every { it.type == 'Null' && it.valueInfo == ['omitted': true] }
+    }
+
+    def 'only decrypts the requested variables'() {
+        given: 'sealed variables'
+        def variables = [sealedVariable("a"), sealedVariable("b"), sealedVariable("c")]
+        def queryParameters = new MultivaluedStringMap()
+        queryParameters.putSingle("decryptNames", "a, c")
+
+        when: 'filter executed'
+        filter('variable-instance', queryParameters, variables)
+
+        then: 'requested variables are decrypted'
+        variables[0].type == 'Json'
+        variables[2].type == 'Json'
+
+        and: 'the values of other encrypted variables are omitted'
+        variables[1].value == null
+        variables[1].name == 'b'
+        variables[1].type == 'Null'
+        variables[1].valueInfo == ['omitted': true]
+    }
+
+    def 'writes only the requested variables as json'() {
+        given: 'sealed variables'
+        def variables = [sealedVariable("a"), sealedVariable("b")]
+        def queryParameters = new MultivaluedStringMap()
+        queryParameters.putSingle("decryptNames", "a")
+
+        when: 'filter executed and the response is serialized'
+        filter('variable-instance', queryParameters, variables)
+        def response = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(variables))
+
+        then: 'the requested variable is written as its json value'
+        response[0].get('type').asText() == 'Json'
+        new ObjectMapper().readTree(response[0].get('value').asText()).get('name').asText() == 'test'
+
+        and: 'nothing of the encrypted value is written for the other variable'
+        response[1].get('name').asText() == 'b'
+        response[1].get('value').isNull()
+        response[1].get('type').asText() == 'Null'
+        !response[1].get('valueInfo').has('objectTypeName')
+        response[1].get('valueInfo').get('omitted').asBoolean()
+    }
+
+    def 'decrypts a single variable instance'() {
+        given: 'a sealed variable'
+        def variable = sealedVariable("a")
+
+        when: 'filter executed'
+        filter('variable-instance/variableInstanceId', new MultivaluedStringMap(), variable)
+
+        then: 'data is decrypted'
+        variable.type == 'Json'
+        !(variable.value instanceof SealedObject)
+    }
 }
@@ -2,6 +2,7 @@ package io.digital.patterns.workflow.encrypt
 
 import io.digital.patterns.workflow.SpringApplicationContext
 import io.digitalpatterns.camunda.encryption.*
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.camunda.bpm.engine.rest.dto.VariableValueDto
 import org.camunda.bpm.engine.test.ProcessEngineRule
 import org.camunda.bpm.engine.variable.Variables
@@ -30,6 +31,7 @@ class GetVariablesDecryptInterceptorSpec extends Specification {
     ApplicationContext context = new AnnotationConfigApplicationContext()
 
     GetVariablesDecryptInterceptor interceptor
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
     ProcessDefinitionEncryptionParser parser
     ProcessInstanceSpinVariableEncryptor encryptor
     ProcessInstanceSpinVariableDecryptor decryptor
@@ -50,6 +52,9 @@ class GetVariablesDecryptInterceptorSpec extends Specification {
         beanFactory.registerSingleton("parser", parser)
         beanFactory.registerSingleton("encryptor", encryptor)
         beanFactory.registerSingleton("decryptor", decryptor)
+        beanFactory.registerSingleton("envelopeCipher", new EnvelopeCipher("v1", "test", "test", false))
+        beanFactory.registerSingleton("parallelDecryption", new ParallelDecryption(2, 64))
+        beanFactory.registerSingleton("encryptionMetrics", new EncryptionMetrics(meterRegistry))
 
         context.refresh()
         context.start()
@@ -103,4 +108,41 @@ class GetVariablesDecryptInterceptorSpec extends Specification {
 
     }
 
+    def 'can decrypt envelope'() {
+        given: 'mock context'
+        ContainerRequestContext requestContext = Mock()
+        UriInfo uriInfo = Mock()
+        requestContext.getUriInfo() >> uriInfo
+        requestContext.getMethod() >> 'GET'
+        uriInfo.getPath() >> 'process-instance/processInstanceId/variables'
+
+        and: 'envelope variable'
+        def envelope = new EnvelopeCipher("v1", "test", "test", true).encrypt('{"name":"test"}')
+        def dto = new VariableValueDto()
+        dto.setValue(Base64.encoder.encodeToString(envelope.toBytes()))
+        dto.setValueInfo(
+                Map.of(
+                        VALUE_INFO_OBJECT_TYPE_NAME, VariableEnvelope.class.getName(),
+                        VALUE_INFO_SERIALIZATION_DATA_FORMAT, VariableEnvelopeSerializer.DATA_FORMAT
+                )
+        )
+        dto.setType(ValueType.OBJECT.getName())
+        def variables = Map.of("variable", dto)
+
+        and:
+        ContainerResponseContext responseContext = Mock()
+        responseContext.getEntity() >> variables
+
+        when: 'filter executed'
+        interceptor.filter(requestContext, responseContext)
+
+        then: 'data is decrypted'
+        variables.get("variable").getValue() == '{"name":"test"}'
+        variables.get("variable").getType() == 'Json'
+
+        and: 'decryption is timed'
+        meterRegistry.get("variables.encryption")
+                .tag("operation", "decrypt").tag("format", "envelope")
+                .timer().count() == 1
+    }
 }
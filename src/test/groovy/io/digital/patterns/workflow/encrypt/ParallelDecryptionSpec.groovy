@@ -0,0 +1,42 @@
+package io.digital.patterns.workflow.encrypt
+
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+
+class ParallelDecryptionSpec extends Specification {
+
+    def decryption = new ParallelDecryption(4, 10)
+
+    def cleanup() {
+        decryption.shutdown()
+    }
+
+    def 'decrypts small lists on the calling thread'() {
+        given:
+        def threads = ConcurrentHashMap.newKeySet()
+        def variables = (1..10).collect { new StringBuilder("value${it}") }
+
+        when:
+        decryption.forEach(variables, { threads << Thread.currentThread().name; it.append("-decrypted") })
+
+        then:
+        threads == [Thread.currentThread().name] as Set
+        variables.every { it.toString().endsWith("-decrypted") }
+    }
+
+    def 'decrypts large lists in the pool and keeps their order'() {
+        given:
+        def threads = ConcurrentHashMap.newKeySet()
+        def variables = (1..1000).collect { new StringBuilder("value${it}") }
+
+        when:
+        decryption.forEach(variables, { threads << Thread.currentThread().name; it.append("-decrypted") })
+
+        then: 'every variable is decrypted in place'
+        variables*.toString() == (1..1000).collect { "value${it}-decrypted" }
+
+        and: 'pool threads were used'
+        threads.any { it.startsWith("variable-decrypt-") }
+    }
+}
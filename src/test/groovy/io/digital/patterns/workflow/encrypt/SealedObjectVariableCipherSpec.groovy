@@ -0,0 +1,53 @@
+package io.digital.patterns.workflow.encrypt
+
+import io.digitalpatterns.camunda.encryption.DefaultProcessInstanceSpinVariableEncryptor
+import org.apache.commons.lang3.SerializationUtils
+import org.camunda.spin.Spin
+import spock.lang.Specification
+
+import javax.crypto.SealedObject
+
+class SealedObjectVariableCipherSpec extends Specification {
+
+    def cipher = new SealedObjectVariableCipher("test", "test")
+
+    def 'json is sealed and opened again'() {
+        when: 'a value is sealed'
+        SealedObject sealed = cipher.encrypt(value)
+
+        then: 'it is sealed with AES-GCM'
+        sealed.algorithm == 'AES/GCM/NoPadding'
+
+        and: 'the json is read back after serialization'
+        cipher.decrypt(SerializationUtils.clone(sealed)).toString() == '{"name":"test"}'
+
+        where:
+        value << ['{"name":"test"}', Spin.JSON('{"name":"test"}'), ['name': 'test']]
+    }
+
+    def 'every value gets its own iv'() {
+        expect:
+        !Arrays.equals(SerializationUtils.serialize(cipher.encrypt('{"name":"test"}')),
+                SerializationUtils.serialize(cipher.encrypt('{"name":"test"}')))
+    }
+
+    def 'values sealed by the library are still read'() {
+        given:
+        SealedObject sealed = new DefaultProcessInstanceSpinVariableEncryptor("test", "test")
+                .encrypt(Spin.JSON('{"name":"test"}'))
+
+        expect:
+        cipher.decrypt(sealed).prop('name').stringValue() == 'test'
+    }
+
+    def 'values sealed with another key are not read'() {
+        given:
+        SealedObject sealed = new SealedObjectVariableCipher("other", "other").encrypt('{"name":"test"}')
+
+        when:
+        cipher.decrypt(sealed)
+
+        then:
+        thrown(Exception)
+    }
+}
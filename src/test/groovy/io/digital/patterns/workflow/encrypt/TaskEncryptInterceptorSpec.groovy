@@ -2,6 +2,7 @@ package io.digital.patterns.workflow.encrypt
 
 import io.digital.patterns.workflow.SpringApplicationContext
 import io.digitalpatterns.camunda.encryption.*
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.apache.commons.io.IOUtils
 import org.apache.commons.lang3.SerializationUtils
 import org.camunda.bpm.engine.rest.dto.VariableValueDto
@@ -52,8 +53,12 @@ class TaskEncryptInterceptorSpec extends Specification {
 
         ConfigurableListableBeanFactory beanFactory = ((ConfigurableApplicationContext) context).getBeanFactory()
         beanFactory.registerSingleton("parser", parser)
+        beanFactory.registerSingleton("encryptionFlagCache",
+                new EncryptionFlagCache(parser, engineRule.repositoryService))
         beanFactory.registerSingleton("encryptor", encryptor)
         beanFactory.registerSingleton("decryptor", decryptor)
+        beanFactory.registerSingleton("envelopeCipher", new EnvelopeCipher("v1", "test", "test", false))
+        beanFactory.registerSingleton("encryptionMetrics", new EncryptionMetrics(new SimpleMeterRegistry()))
 
         context.refresh()
         context.start()
@@ -0,0 +1,91 @@
+package io.digital.patterns.workflow.encrypt
+
+import org.camunda.bpm.engine.test.ProcessEngineRule
+import org.camunda.bpm.engine.variable.Variables
+import org.camunda.bpm.engine.variable.value.ObjectValue
+import org.camunda.bpm.model.bpmn.Bpmn
+import org.camunda.spin.Spin
+import org.camunda.spin.json.SpinJsonNode
+import org.junit.Rule
+import spock.lang.Specification
+
+class VariableEnvelopeSerializerSpec extends Specification {
+
+    @Rule
+    ProcessEngineRule engineRule = new ProcessEngineRule()
+
+    def cipher = new EnvelopeCipher("v1", "test", "test", true)
+
+    def envelopeValue(String json) {
+        def envelope = cipher.encrypt(json)
+        Variables.serializedObjectValue(Base64.encoder.encodeToString(envelope.toBytes()))
+                .serializationDataFormat(VariableEnvelopeSerializer.DATA_FORMAT)
+                .objectTypeName(VariableEnvelope.class.getName())
+                .create()
+    }
+
+    def 'stores envelopes without java serialization'() {
+        given: 'a process instance'
+        engineRule.repositoryService.createDeployment()
+                .addModelInstance("envelope.bpmn", Bpmn.createExecutableProcess("envelope")
+                        .startEvent().userTask().endEvent().done())
+                .deploy()
+        def instance = engineRule.runtimeService.startProcessInstanceByKey("envelope")
+
+        when: 'an envelope submitted as a serialized value is stored and read'
+        engineRule.runtimeService.setVariable(instance.id, "form", envelopeValue('{"name":"test"}'))
+        ObjectValue stored = engineRule.runtimeService.getVariableTyped(instance.id, "form", true)
+        ObjectValue serialized = engineRule.runtimeService.getVariableTyped(instance.id, "form", false)
+
+        then: 'the json is read back'
+        stored.serializationDataFormat == VariableEnvelopeSerializer.DATA_FORMAT
+        stored.value instanceof SpinJsonNode
+        stored.value.toString() == '{"name":"test"}'
+
+        and: 'the stored value is still the envelope'
+        cipher.decrypt(VariableEnvelope.fromBytes(
+                Base64.decoder.decode(serialized.valueSerialized))) == '{"name":"test"}'
+    }
+
+    def 'encrypted variables can be read inside a process'() {
+        given: 'a process that reads the encrypted form in an expression'
+        engineRule.repositoryService.createDeployment()
+                .addModelInstance("envelope-read.bpmn", Bpmn.createExecutableProcess("envelopeRead")
+                        .startEvent()
+                        .userTask("submit")
+                        .serviceTask()
+                        .camundaExpression('${execution.setVariable("name", form.prop("name").stringValue())}')
+                        .userTask("review")
+                        .endEvent().done())
+                .deploy()
+        def instance = engineRule.runtimeService.startProcessInstanceByKey("envelopeRead")
+
+        when: 'the form is submitted as an envelope'
+        def task = engineRule.taskService.createTaskQuery().processInstanceId(instance.id).singleResult()
+        engineRule.taskService.complete(task.id, ['form': envelopeValue('{"name":"test"}')])
+
+        then: 'the engine reads the decrypted json'
+        engineRule.runtimeService.getVariable(instance.id, "name") == 'test'
+        engineRule.runtimeService.getVariable(instance.id, "form") instanceof SpinJsonNode
+    }
+
+    def 'json set in the envelope format is encrypted'() {
+        given: 'a process instance'
+        engineRule.repositoryService.createDeployment()
+                .addModelInstance("envelope-write.bpmn", Bpmn.createExecutableProcess("envelopeWrite")
+                        .startEvent().userTask().endEvent().done())
+                .deploy()
+        def instance = engineRule.runtimeService.startProcessInstanceByKey("envelopeWrite")
+
+        when: 'json is set in the envelope format'
+        def json = Spin.JSON('{"name":"test"}')
+        engineRule.runtimeService.setVariable(instance.id, "form",
+                Variables.objectValue(json).serializationDataFormat(VariableEnvelopeSerializer.DATA_FORMAT).create())
+        ObjectValue serialized = engineRule.runtimeService.getVariableTyped(instance.id, "form", false)
+
+        then: 'an envelope is stored'
+        serialized.objectTypeName == VariableEnvelope.class.getName()
+        cipher.decrypt(VariableEnvelope.fromBytes(
+                Base64.decoder.decode(serialized.valueSerialized))) == '{"name":"test"}'
+    }
+}
@@ -0,0 +1,75 @@
+package io.digital.patterns.workflow.encrypt
+
+import groovy.json.JsonSlurper
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class VariableJsonRewriterSpec extends Specification {
+
+    def rewriter = new VariableJsonRewriter({
+        it.setValue("encrypted")
+        it.setType("Object")
+    })
+
+    def rewriteVariables(String body, String field) {
+        def rewritten = new ByteArrayOutputStream()
+        rewriter.rewriteVariables(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), rewritten, field)
+        return rewritten.toString(StandardCharsets.UTF_8)
+    }
+
+    def 'rewrites only json variables'() {
+        given: 'a start request'
+        def body = '''{
+            "businessKey": "businessKey",
+            "variables": {
+                "text": {"value": "café", "type": "String"},
+                "form": {"type": "json", "value": "{\\"name\\":\\"test\\"}"},
+                "amount": {"value": 12.50, "type": "Double"}
+            },
+            "withVariablesInReturn": true
+        }'''
+
+        when: 'the variables are rewritten'
+        def rewritten = rewriteVariables(body, "variables")
+        def json = new JsonSlurper().parseText(rewritten)
+
+        then: 'the json variable is rewritten'
+        json.variables.form.value == "encrypted"
+        json.variables.form.type == "Object"
+
+        and: 'everything else is copied'
+        json.businessKey == "businessKey"
+        json.withVariablesInReturn
+        json.variables.text == [value: "café", type: "String"]
+        json.variables.amount == [value: 12.5, type: "Double"]
+    }
+
+    def 'leaves variables outside the field untouched'() {
+        given: 'a patch request'
+        def body = '''{
+            "modifications": {"form": {"value": "{}", "type": "Json"}},
+            "deletions": ["other"],
+            "variables": {"form": {"value": "{}", "type": "Json"}}
+        }'''
+
+        when: 'the modifications are rewritten'
+        def json = new JsonSlurper().parseText(rewriteVariables(body, "modifications"))
+
+        then:
+        json.modifications.form.value == "encrypted"
+        json.deletions == ["other"]
+        json.variables.form.value == "{}"
+    }
+
+    def 'rewrites a single variable'() {
+        given:
+        def rewritten = new ByteArrayOutputStream()
+
+        when: 'a json variable is rewritten'
+        rewriter.rewriteVariable(new ByteArrayInputStream('{"value": "{}", "type": "json"}'.bytes), rewritten)
+
+        then:
+        new JsonSlurper().parseText(rewritten.toString(StandardCharsets.UTF_8)).value == "encrypted"
+    }
+}
@@ -3,6 +3,7 @@ package io.digital.patterns.workflow.security
 import io.digital.patterns.workflow.security.cockpit.KeycloakAuthenticationProvider
 import org.camunda.bpm.engine.IdentityService
 import org.camunda.bpm.engine.ProcessEngine
+import org.camunda.bpm.engine.identity.Group
 import org.camunda.bpm.engine.identity.GroupQuery
 import org.springframework.security.core.context.SecurityContextHolder
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken
@@ -18,7 +19,7 @@ class KeycloakAuthenticationProviderSpec extends Specification {
     IdentityService identityService = Mock()
 
     def setup() {
-        underTest = new KeycloakAuthenticationProvider()
+        underTest = new KeycloakAuthenticationProvider(new GroupMembershipCache(identityService, 300, 100))
     }
 
     def cleanup() {
@@ -30,7 +31,6 @@ class KeycloakAuthenticationProviderSpec extends Specification {
         HttpServletRequest request = Mock()
         OAuth2AuthenticationToken token= Mock()
         GroupQuery query =Mock()
-        processEngine.getIdentityService() >> identityService
         identityService.createGroupQuery() >> query
         query.groupMember(_) >> query
         query.list() >> []
@@ -74,4 +74,29 @@ class KeycloakAuthenticationProviderSpec extends Specification {
         result
         !result.authenticated
     }
+
+    def 'loads the groups of a user once'() {
+        given: 'a request'
+        HttpServletRequest request = Mock()
+        OAuth2AuthenticationToken token= Mock()
+        GroupQuery query = Mock()
+        Group group = Mock()
+        group.getId() >> 'teamA'
+        token.getDetails() >> new Object()
+        token.getName() >> 'Name'
+        SecurityContextHolder.getContext().setAuthentication(token)
+
+        when: 'the user is extracted twice'
+        def first = underTest.extractAuthenticatedUser(request, processEngine)
+        def second = underTest.extractAuthenticatedUser(request, processEngine)
+
+        then: 'groups are queried once'
+        1 * identityService.createGroupQuery() >> query
+        1 * query.groupMember('Name') >> query
+        1 * query.list() >> [group]
+
+        and: 'both results have the groups'
+        first.groups == ['teamA']
+        second.groups == ['teamA']
+    }
 }
@@ -0,0 +1,53 @@
+package io.digital.patterns.workflow.security
+
+import com.github.tomakehurst.wiremock.client.WireMock
+import com.github.tomakehurst.wiremock.junit.WireMockRule
+import org.junit.Rule
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+class KeycloakBearerTokenInterceptorSpec extends Specification {
+    def wmPort = 8183
+
+    @Rule
+    WireMockRule wireMockRule = new WireMockRule(wmPort)
+
+    KeycloakClient keycloakClient = Mock()
+    RestTemplate restTemplate = new RestTemplate()
+
+    def setup() {
+        restTemplate.getInterceptors().add(new KeycloakBearerTokenInterceptor(keycloakClient))
+    }
+
+    def 'retries once with a new token after a 401'() {
+        given: 'the first token is rejected'
+        WireMock.stubFor(WireMock.get("/forms")
+                .withHeader("Authorization", WireMock.equalTo("Bearer OLD_TOKEN"))
+                .willReturn(WireMock.aResponse().withStatus(401)))
+        WireMock.stubFor(WireMock.get("/forms")
+                .withHeader("Authorization", WireMock.equalTo("Bearer NEW_TOKEN"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("forms")))
+
+        when: 'a request is made'
+        def response = restTemplate.getForObject("http://localhost:8183/forms", String)
+
+        then: 'the rejected token is invalidated and the request is retried'
+        2 * keycloakClient.bearerToken() >>> ["OLD_TOKEN", "NEW_TOKEN"]
+        1 * keycloakClient.invalidate("OLD_TOKEN")
+        response == "forms"
+    }
+
+    def 'does not retry a successful request'() {
+        given:
+        WireMock.stubFor(WireMock.get("/forms")
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("forms")))
+
+        when: 'a request is made'
+        def response = restTemplate.getForObject("http://localhost:8183/forms", String)
+
+        then: 'one token is used'
+        1 * keycloakClient.bearerToken() >> "TOKEN"
+        0 * keycloakClient.invalidate(_)
+        response == "forms"
+    }
+}
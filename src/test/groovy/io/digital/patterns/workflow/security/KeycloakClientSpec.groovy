@@ -5,13 +5,37 @@ import com.github.tomakehurst.wiremock.junit.WireMockRule
 import org.junit.Rule
 import spock.lang.Specification
 
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+
 class KeycloakClientSpec extends Specification {
     def wmPort = 8182
+    def tokenUrl = "/auth/realms/myRealm/protocol/openid-connect/token"
 
     @Rule
     WireMockRule wireMockRule = new WireMockRule(wmPort)
 
-    KeycloakClient service = new KeycloakClient("http://localhost:8182", "myRealm", "client_id", "very_secret")
+    MutableClock clock = new MutableClock()
+    KeycloakClient service = new KeycloakClient("http://localhost:8182", "myRealm", "client_id", "very_secret", clock)
+
+    def cleanup() {
+        service.shutdown()
+    }
+
+    def stubToken(String token, Integer expiresIn) {
+        WireMock.stubFor(WireMock.post(tokenUrl)
+                .willReturn(WireMock.aResponse()
+                .withHeader("Content-Type", "application/json")
+                .withBody("""
+                                        {
+                                            "access_token": "${token}"
+                                            ${expiresIn != null ? ", \"expires_in\": ${expiresIn}" : ""}
+                                        }
+                                        """)))
+    }
 
     def shouldReturnAccessToken() {
         given:
@@ -35,4 +59,86 @@ class KeycloakClientSpec extends Specification {
         token == "MY_SECURE_TOKEN"
 
     }
+
+    def 'caches the token until it is close to expiry'() {
+        given: 'a token that expires in 5 minutes'
+        stubToken("FIRST_TOKEN", 300)
+
+        when: 'the token is requested several times'
+        def tokens = (1..5).collect { service.bearerToken() }
+
+        then: 'keycloak is called once'
+        tokens.every { it == "FIRST_TOKEN" }
+        WireMock.verify(1, WireMock.postRequestedFor(WireMock.urlEqualTo(tokenUrl)))
+    }
+
+    def 'refreshes the token in the background before expiry'() {
+        given: 'a cached token'
+        stubToken("FIRST_TOKEN", 300)
+        service.bearerToken()
+
+        and: 'the token is close to expiry'
+        stubToken("SECOND_TOKEN", 300)
+        clock.advance(Duration.ofSeconds(280))
+
+        when: 'the token is requested'
+        def token = service.bearerToken()
+
+        then: 'the cached token is returned while it is refreshed'
+        token == "FIRST_TOKEN"
+
+        when: 'the refresh has completed'
+        Thread.sleep(500)
+
+        then: 'the new token is returned'
+        service.bearerToken() == "SECOND_TOKEN"
+        WireMock.verify(2, WireMock.postRequestedFor(WireMock.urlEqualTo(tokenUrl)))
+    }
+
+    def 'gets a new token once the cached token has expired'() {
+        given: 'an expired token'
+        stubToken("FIRST_TOKEN", 300)
+        service.bearerToken()
+        stubToken("SECOND_TOKEN", 300)
+        clock.advance(Duration.ofSeconds(300))
+
+        expect: 'a new token is returned'
+        service.bearerToken() == "SECOND_TOKEN"
+    }
+
+    def 'gets a new token once the cached token is invalidated'() {
+        given: 'a cached token'
+        stubToken("FIRST_TOKEN", 300)
+        service.bearerToken()
+        stubToken("SECOND_TOKEN", 300)
+
+        when: 'the token is invalidated'
+        service.invalidate("FIRST_TOKEN")
+
+        then: 'a new token is returned'
+        service.bearerToken() == "SECOND_TOKEN"
+    }
+
+    static class MutableClock extends Clock {
+        Instant instant = Instant.now()
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration)
+        }
+
+        @Override
+        ZoneId getZone() {
+            return ZoneOffset.UTC
+        }
+
+        @Override
+        Clock withZone(ZoneId zone) {
+            return this
+        }
+
+        @Override
+        Instant instant() {
+            return instant
+        }
+    }
 }